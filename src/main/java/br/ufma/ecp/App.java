@@ -6,9 +6,22 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufma.ecp.opt.PassManager;
+import br.ufma.ecp.opt.TreeShaking;
 import br.ufma.ecp.token.Token; 
 
 public class App 
@@ -35,48 +48,76 @@ public class App
     }
 
 
-    private static String fromFile(File file) {        
+    // maps the source file straight into memory, the Scanner reads it in place
+    private static ByteBuffer fromFile(File file) {        
 
-        byte[] bytes;
-        try {
-            bytes = Files.readAllBytes(file.toPath());
-            String textoDoArquivo = new String(bytes, "UTF-8");
-            return textoDoArquivo;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return "";
+        return ByteBuffer.allocate(0);
     } 
 
 
+    private static final String USAGE = "usage: App [-O0|-O1|-O2] [-fno-<pass>]... [-shake] [-strings] [-index-cache=<file>] [-stats] <file or directory>";
+
     public static void main(String[] args) {
-        if (args.length != 1) {
+        String path = null;
+        boolean stats = false;
+        passes = PassManager.level(0);
+        List<String> disabled = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.matches("-O[012]")) {
+                passes = PassManager.level(arg.charAt(2) - '0');
+            } else if (arg.startsWith("-fno-")) {
+                disabled.add(arg.substring(5));
+            } else if (arg.startsWith("-index-cache=")) {
+                indexCache = Paths.get(arg.substring("-index-cache=".length()));
+            } else if (arg.equals("-stats")) {
+                stats = true;
+            } else if (arg.equals("-strings")) {
+                strings = new StringPool();
+            } else if (arg.equals("-shake")) {
+                shaking = new TreeShaking();
+            } else if (arg.startsWith("-") || path != null) {
+                System.err.println(USAGE);
+                System.exit(1);
+            } else {
+                path = arg;
+            }
+        }
+        if (path == null) {
             System.err.println("Please provide a single file path argument.");
+            System.err.println(USAGE);
             System.exit(1);
         }
+        for (String name : disabled) {
+            if (!passes.setEnabled(name, false)) {
+                System.err.println("No pass named " + name + " at this level.");
+                System.exit(1);
+            }
+        }
 
-        File file = new File(args[0]);
+        File file = new File(path);
 
         if (!file.exists()) {
             System.err.println("The file doesn't exist.");
             System.exit(1);
         }
 
+        // a single file is not the whole program, its callers may be elsewhere
+        if (shaking != null && !file.isDirectory()) {
+            System.err.println("-shake needs a directory holding the whole program.");
+            System.exit(1);
+        }
+
         // we need to compile every file in the directory
         if (file.isDirectory()) {
+            buildIndex(file);
             for (File f : file.listFiles()) {
                 if (f.isFile() && f.getName().endsWith(".jack")) {
-
-                    var inputFileName = f.getAbsolutePath();
-                    var pos = inputFileName.indexOf('.');
-                    var outputFileName = inputFileName.substring(0, pos) + ".vm";
-                    
-                    System.out.println("compiling " +  inputFileName);
-                    var input = fromFile(f);
-                    var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
-                    parser.parse();
-                    var result = parser.VMOutput();
-                    saveToFile(outputFileName, result);
+                    compile(f);
                 }
 
             }
@@ -86,19 +127,120 @@ public class App
                 System.err.println("Please provide a file name ending with .jack");
                 System.exit(1);
             } else {
-                var inputFileName = file.getAbsolutePath();
-                var pos = inputFileName.indexOf('.');
-                var outputFileName = inputFileName.substring(0, pos) + ".vm";
-                
-                System.out.println("compiling " +  inputFileName);
-                var input = fromFile(file);
-                var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+                compile(file);
+            }
+        }
+
+        if (shaking != null) {
+            writeShaken();
+        }
+
+        if (stats) {
+            System.err.print(passes.report());
+            if (strings != null) {
+                System.err.printf("string pool: %d literals, %d uses, %d built inline, %d -> %d instructions%n",
+                    strings.pooled(), strings.uses(), strings.inlined(), strings.inlineSize(), strings.pooledSize());
+            }
+            if (shaking != null) {
+                System.err.printf("shaking removed %d functions, %d instructions: %s%n",
+                    shaking.removed().size(), shaking.removedSize(), shaking.removed());
+            }
+        }
+    }
+
+    // one parser for every file, reset in between
+    private static Parser parser;
+    private static ProjectIndex index;
+    // only with -index-cache; nothing is written next to the sources
+    private static Path indexCache;
+    private static PassManager passes;
+    private static StringPool strings;
+    // with -shake, the code of every class of the directory until all are compiled
+    private static TreeShaking shaking;
+    private static final Map<File, VMCode> compiled = new LinkedHashMap<>();
+
+    // signatures of every class in the directory, for checking calls
+    private static void buildIndex(File dir) {
+        List<Path> files = new ArrayList<>();
+        for (File f : dir.listFiles()) {
+            if (f.isFile() && f.getName().endsWith(".jack")) {
+                files.add(f.toPath());
+            }
+        }
+        try {
+            index = ProjectIndex.build(files, indexCache);
+        } catch (IOException e) {
+            System.err.println("warning: calls are not checked, could not index " + dir + ": " + e);
+        }
+    }
+
+    // streams the VM code to the .vm file subroutine by subroutine
+    private static void compile(File file) {
+        var inputFileName = file.getAbsolutePath();
+        System.out.println("compiling " +  inputFileName);
+        var input = fromFile(file);
+
+        if (shaking != null) {
+            // the code has to outlive the parser, so no reuse
+            var wholeProgram = newParser(input);
+            wholeProgram.parse();
+            shaking.add(wholeProgram.VMCode());
+            compiled.put(file, wholeProgram.VMCode());
+            return;
+        }
+
+        // written next to the .vm and moved over it once the class parsed, so
+        // a class with errors leaves no truncated output behind
+        Path target = outputPath(file);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            try (Writer output = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                if (parser == null) {
+                    parser = newParser(input);
+                } else {
+                    parser.reset(input);
+                }
+                parser.setOutput(output);
                 parser.parse();
-                var result = parser.VMOutput();
-                saveToFile(outputFileName, result);
-                
             }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Parser newParser(ByteBuffer input) {
+        var parser = new Parser(input);
+        parser.setOutputMode(Parser.OutputMode.VM);
+        parser.setIndex(index);
+        parser.setStringPool(strings);
+        if (!passes.passes().isEmpty()) {
+            parser.addPass(passes);
         }
+        return parser;
+    }
+
+    // the functions reachable from Main.main, once every class is compiled
+    private static void writeShaken() {
+        for (var entry : compiled.entrySet()) {
+            try {
+                Files.writeString(outputPath(entry.getKey()), shaking.text(entry.getValue()), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Path outputPath(File file) {
+        var inputFileName = file.getAbsolutePath();
+        var pos = inputFileName.indexOf('.');
+        return Paths.get(inputFileName.substring(0, pos) + ".vm");
     }
 
 }
\ No newline at end of file
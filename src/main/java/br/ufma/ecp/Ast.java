@@ -0,0 +1,140 @@
+package br.ufma.ecp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Syntax tree of a class kept in an arena of parallel int arrays. A node is
+ * an index; its children are linked through {@link #first} and {@link #next},
+ * so a walk touches a few flat arrays and builds no objects.
+ *
+ * What value and extra hold depends on the kind, see {@link Kind}. Names and
+ * string constants are indices into a name table, read back with {@link #text}.
+ */
+public class Ast {
+
+    public enum Kind {
+        CLASS,                  // value: name; children: variables, then subroutines
+        STATIC, FIELD, ARG, VAR, // value: name, extra: type
+        SUBROUTINE,             // value: name, extra: TokenType ordinal; children: args, vars, statements
+        BLOCK,                  // children: statements
+        LET,                    // value: variable; children: value
+        LET_ARRAY,              // value: variable; children: index, value
+        IF,                     // children: condition, then block, optional else block
+        WHILE,                  // children: condition, block
+        DO,                     // children: call
+        RETURN,                 // children: optional value
+        BINARY,                 // value: operator TokenType ordinal; children: left, right
+        UNARY,                  // value: operator TokenType ordinal; children: operand
+        INT,                    // value: the constant
+        STRING,                 // value: the string
+        KEYWORD,                // value: TokenType ordinal of true, false, null or this
+        NAME,                   // value: variable
+        INDEX,                  // value: variable; children: index
+        CALL                    // value: subroutine, extra: receiver or NONE; children: arguments
+    };
+
+    public static final int NONE = -1;
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private int[] kinds = new int[256];
+    private int[] values = new int[256];
+    private int[] extras = new int[256];
+    private int[] firsts = new int[256];
+    private int[] lasts = new int[256];
+    private int[] nexts = new int[256];
+    private int size;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+
+    public int add(Kind kind, int value, int extra) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            extras = Arrays.copyOf(extras, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+            lasts = Arrays.copyOf(lasts, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+        }
+        kinds[size] = kind.ordinal();
+        values[size] = value;
+        extras[size] = extra;
+        firsts[size] = NONE;
+        lasts[size] = NONE;
+        nexts[size] = NONE;
+        return size++;
+    }
+
+    public int add(Kind kind, int value) {
+        return add(kind, value, NONE);
+    }
+
+    // makes child the last child of parent
+    public void append(int parent, int child) {
+        if (firsts[parent] == NONE) {
+            firsts[parent] = child;
+        } else {
+            nexts[lasts[parent]] = child;
+        }
+        lasts[parent] = child;
+    }
+
+    /**
+     * Index of a name or string constant in the name table, adding it if new.
+     */
+    public int name(String name) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndex.put(name, index);
+        }
+        return index;
+    }
+
+    public String nameAt(int index) {
+        return names.get(index);
+    }
+
+    // the name or string held in the value of a node
+    public String text(int node) {
+        return names.get(values[node]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    public int extra(int node) {
+        return extras[node];
+    }
+
+    public int first(int node) {
+        return firsts[node];
+    }
+
+    public int next(int node) {
+        return nexts[node];
+    }
+
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firsts[node]; child != NONE; child = nexts[child]) {
+            count++;
+        }
+        return count;
+    }
+}
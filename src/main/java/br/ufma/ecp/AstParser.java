@@ -0,0 +1,324 @@
+package br.ufma.ecp;
+
+import java.nio.ByteBuffer;
+
+import br.ufma.ecp.token.LexemePool;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Parses a class into an {@link Ast} instead of emitting code while parsing;
+ * {@link CodeGenerator} turns the tree into the same VM code as {@link Parser}.
+ */
+public class AstParser {
+
+    private final Ast ast = new Ast();
+    private final Scanner scan;
+    private final TokenBuffer tokens;
+    private int currentToken = -1;
+    private int peekToken;
+
+    public AstParser (byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    public AstParser (ByteBuffer input) {
+        scan = new Scanner(input);
+        tokens = TokenBuffer.ring(4, input.slice(), new LexemePool());
+        peekToken = scan.scanInto(tokens);
+    }
+
+    private void nextToken () {
+        currentToken = peekToken;
+        peekToken = scan.scanInto(tokens);
+    }
+
+    public Ast parse() {
+        parseClass();
+        return ast;
+    }
+
+    int parseClass() {
+        expectPeek(TokenType.CLASS);
+        expectPeek(TokenType.IDENT);
+        int node = ast.add(Ast.Kind.CLASS, currentName());
+        expectPeek(TokenType.LBRACE);
+        parseClassVarDec(node);
+        parseSubRoutineDec(node);
+        expectPeek(TokenType.RBRACE);
+        return node;
+    }
+
+    void parseClassVarDec(int parent) {
+        while (peekTokenIs(TokenType.STATIC) || peekTokenIs(TokenType.FIELD)) {
+            expectPeek(TokenType.STATIC, TokenType.FIELD);
+            var kind = currentTokenIs(TokenType.FIELD) ? Ast.Kind.FIELD : Ast.Kind.STATIC;
+            parseNames(parent, kind);
+            expectPeek(TokenType.SEMICOLON);
+        }
+    }
+
+    // type name (, name)*
+    private void parseNames(int parent, Ast.Kind kind) {
+        expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+        int type = currentName();
+        expectPeek(TokenType.IDENT);
+        ast.append(parent, ast.add(kind, currentName(), type));
+
+        while (peekTokenIs(TokenType.COMMA)) {
+            expectPeek(TokenType.COMMA);
+            expectPeek(TokenType.IDENT);
+            ast.append(parent, ast.add(kind, currentName(), type));
+        }
+    }
+
+    void parseSubRoutineDec(int parent) {
+        while (peekTokenIs(TokenType.CONSTRUCTOR) || peekTokenIs(TokenType.FUNCTION) || peekTokenIs(TokenType.METHOD)) {
+            expectPeek(TokenType.CONSTRUCTOR, TokenType.FUNCTION, TokenType.METHOD);
+            var subroutineType = tokens.type(currentToken);
+            expectPeek(TokenType.VOID, TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+            expectPeek(TokenType.IDENT);
+            int node = ast.add(Ast.Kind.SUBROUTINE, currentName(), subroutineType.ordinal());
+            ast.append(parent, node);
+
+            expectPeek(TokenType.LPAREN);
+            parseParameterList(node);
+            expectPeek(TokenType.RPAREN);
+
+            expectPeek(TokenType.LBRACE);
+            while (peekTokenIs(TokenType.VAR)) {
+                expectPeek(TokenType.VAR);
+                parseNames(node, Ast.Kind.VAR);
+                expectPeek(TokenType.SEMICOLON);
+            }
+            parseStatements(node);
+            expectPeek(TokenType.RBRACE);
+        }
+    }
+
+    void parseParameterList(int parent) {
+        if (peekTokenIs(TokenType.RPAREN)) {
+            return;
+        }
+        parseParameter(parent);
+        while (peekTokenIs(TokenType.COMMA)) {
+            expectPeek(TokenType.COMMA);
+            parseParameter(parent);
+        }
+    }
+
+    private void parseParameter(int parent) {
+        expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
+        int type = currentName();
+        expectPeek(TokenType.IDENT);
+        ast.append(parent, ast.add(Ast.Kind.ARG, currentName(), type));
+    }
+
+    void parseStatements(int parent) {
+        while (TokenType.isStatement(tokens.type(peekToken))) {
+            int statement = switch (tokens.type(peekToken)) {
+                case LET -> parseLet();
+                case IF -> parseIf();
+                case WHILE -> parseWhile();
+                case RETURN -> parseReturn();
+                default -> parseDo();
+            };
+            ast.append(parent, statement);
+        }
+    }
+
+    int parseBlock() {
+        int node = ast.add(Ast.Kind.BLOCK, 0);
+        expectPeek(TokenType.LBRACE);
+        parseStatements(node);
+        expectPeek(TokenType.RBRACE);
+        return node;
+    }
+
+    int parseLet() {
+        expectPeek(TokenType.LET);
+        expectPeek(TokenType.IDENT);
+        int name = currentName();
+        int index = Ast.NONE;
+        if (peekTokenIs(TokenType.LBRACKET)) {
+            expectPeek(TokenType.LBRACKET);
+            index = parseExpression();
+            expectPeek(TokenType.RBRACKET);
+        }
+        expectPeek(TokenType.EQ);
+        int value = parseExpression();
+        expectPeek(TokenType.SEMICOLON);
+
+        int node = ast.add(index == Ast.NONE ? Ast.Kind.LET : Ast.Kind.LET_ARRAY, name);
+        if (index != Ast.NONE) {
+            ast.append(node, index);
+        }
+        ast.append(node, value);
+        return node;
+    }
+
+    int parseIf() {
+        int node = ast.add(Ast.Kind.IF, 0);
+        expectPeek(TokenType.IF);
+        expectPeek(TokenType.LPAREN);
+        ast.append(node, parseExpression());
+        expectPeek(TokenType.RPAREN);
+        ast.append(node, parseBlock());
+        if (peekTokenIs(TokenType.ELSE)) {
+            expectPeek(TokenType.ELSE);
+            ast.append(node, parseBlock());
+        }
+        return node;
+    }
+
+    int parseWhile() {
+        int node = ast.add(Ast.Kind.WHILE, 0);
+        expectPeek(TokenType.WHILE);
+        expectPeek(TokenType.LPAREN);
+        ast.append(node, parseExpression());
+        expectPeek(TokenType.RPAREN);
+        ast.append(node, parseBlock());
+        return node;
+    }
+
+    int parseDo() {
+        int node = ast.add(Ast.Kind.DO, 0);
+        expectPeek(TokenType.DO);
+        expectPeek(TokenType.IDENT);
+        ast.append(node, parseSubRoutineCall());
+        expectPeek(TokenType.SEMICOLON);
+        return node;
+    }
+
+    int parseReturn() {
+        int node = ast.add(Ast.Kind.RETURN, 0);
+        expectPeek(TokenType.RETURN);
+        if (!peekTokenIs(TokenType.SEMICOLON)) {
+            ast.append(node, parseExpression());
+        }
+        expectPeek(TokenType.SEMICOLON);
+        return node;
+    }
+
+    // operators have no precedence in Jack: a op b op c is (a op b) op c
+    int parseExpression() {
+        int left = parseTerm();
+        while (Parser.isOperator(tokens.type(peekToken))) {
+            var op = tokens.type(peekToken);
+            expectPeek(op);
+            int right = parseTerm();
+            int node = ast.add(Ast.Kind.BINARY, op.ordinal());
+            ast.append(node, left);
+            ast.append(node, right);
+            left = node;
+        }
+        return left;
+    }
+
+    int parseTerm() {
+        var type = tokens.type(peekToken);
+        switch (type) {
+            case NUMBER:
+                expectPeek(TokenType.NUMBER);
+                int value = tokens.intValue(currentToken);
+                if (value < 0) {
+                    throw error(currentToken, "Integer constant above " + TokenBuffer.MAX_INT);
+                }
+                return ast.add(Ast.Kind.INT, value);
+            case STRING:
+                expectPeek(TokenType.STRING);
+                return ast.add(Ast.Kind.STRING, currentName());
+            case THIS:
+            case TRUE:
+            case FALSE:
+            case NULL:
+                expectPeek(type);
+                return ast.add(Ast.Kind.KEYWORD, type.ordinal());
+            case IDENT:
+                expectPeek(TokenType.IDENT);
+                if (peekTokenIs(TokenType.LPAREN) || peekTokenIs(TokenType.DOT)) {
+                    return parseSubRoutineCall();
+                }
+                int name = currentName();
+                if (peekTokenIs(TokenType.LBRACKET)) {
+                    expectPeek(TokenType.LBRACKET);
+                    int node = ast.add(Ast.Kind.INDEX, name);
+                    ast.append(node, parseExpression());
+                    expectPeek(TokenType.RBRACKET);
+                    return node;
+                }
+                return ast.add(Ast.Kind.NAME, name);
+            case LPAREN:
+                expectPeek(TokenType.LPAREN);
+                int expression = parseExpression();
+                expectPeek(TokenType.RPAREN);
+                return expression;
+            case NOT:
+            case MINUS:
+                expectPeek(type);
+                int node = ast.add(Ast.Kind.UNARY, type.ordinal());
+                ast.append(node, parseTerm());
+                return node;
+            default:
+                throw error(peekToken, "term expected");
+        }
+    }
+
+    // the identifier naming the call is the current token
+    int parseSubRoutineCall() {
+        int name = currentName();
+        int receiver = Ast.NONE;
+        if (peekTokenIs(TokenType.DOT)) {
+            expectPeek(TokenType.DOT);
+            expectPeek(TokenType.IDENT);
+            receiver = name;
+            name = currentName();
+        }
+        int node = ast.add(Ast.Kind.CALL, name, receiver);
+
+        expectPeek(TokenType.LPAREN);
+        if (!peekTokenIs(TokenType.RPAREN)) {
+            ast.append(node, parseExpression());
+        }
+        while (peekTokenIs(TokenType.COMMA)) {
+            expectPeek(TokenType.COMMA);
+            ast.append(node, parseExpression());
+        }
+        expectPeek(TokenType.RPAREN);
+        return node;
+    }
+
+    private int currentName() {
+        return ast.name(tokens.lexeme(currentToken));
+    }
+
+    private void expectPeek(TokenType... types) {
+        for (TokenType type: types) {
+            if (tokens.type(peekToken) == type) {
+                expectPeek(type);
+                return;
+            }
+        }
+        throw error(peekToken, "Expected a statement");
+    }
+
+    private void expectPeek(TokenType type) {
+        if (tokens.type(peekToken) == type) {
+            nextToken();
+            return;
+        }
+        throw error(peekToken, "Expected " + type.name());
+    }
+
+    boolean peekTokenIs(TokenType type) {
+        return tokens.type(peekToken) == type;
+    }
+
+    boolean currentTokenIs(TokenType type) {
+        return tokens.type(currentToken) == type;
+    }
+
+    private ParseError error(int token, String message) {
+        return ParseError.at(tokens, token, message);
+    }
+}
@@ -0,0 +1,70 @@
+package br.ufma.ecp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bulk byte searches used by the Scanner to skip blanks and comments.
+ * The default implementation is scalar; {@link #get()} returns the
+ * jdk.incubator.vector one when that module is available.
+ */
+class ByteSearch {
+    private static final ByteSearch SCALAR = new ByteSearch();
+    private static final ByteSearch BEST = load();
+
+    static ByteSearch get() {
+        return BEST;
+    }
+
+    static ByteSearch scalar() {
+        return SCALAR;
+    }
+
+    private static ByteSearch load() {
+        try {
+            return (ByteSearch) Class.forName("br.ufma.ecp.VectorByteSearch")
+                .getDeclaredConstructor().newInstance();
+        } catch (Throwable e) {
+            // module not added (or an incompatible JDK): stay scalar
+            return SCALAR;
+        }
+    }
+
+    /**
+     * First index in [from, to) that is not a blank (space, tab, CR or LF), or to.
+     */
+    int skipBlanks(ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = buf.get(i);
+            if (b != ' ' && b != '\n' && b != '\t' && b != '\r') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * First index in [from, to) holding a or b, or to.
+     */
+    int indexOf(ByteBuffer buf, int from, int to, byte a, byte b) {
+        for (int i = from; i < to; i++) {
+            byte c = buf.get(i);
+            if (c == a || c == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Number of bytes equal to b in [from, to).
+     */
+    int count(ByteBuffer buf, int from, int to, byte b) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) == b) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,308 @@
+package br.ufma.ecp;
+
+import java.io.Writer;
+
+import br.ufma.ecp.opt.Pass;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Walks the {@link Ast} of a class and emits its VM code, the same code
+ * {@link Parser} emits while parsing.
+ */
+public class CodeGenerator {
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final VMWriter vmWriter = new VMWriter();
+    private final SymbolTable symTable = new SymbolTable();
+    private final Ast ast;
+    private StringPool strings;
+    private String className;
+    private int ifLabelNum = 0;
+    private int whileLabelNum = 0;
+
+    public CodeGenerator(Ast ast) {
+        this.ast = ast;
+    }
+
+    // see Parser.setOutput
+    public void setOutput(Writer out) {
+        vmWriter.setOutput(out);
+    }
+
+    // see Parser.setStringPool
+    public void setStringPool(StringPool strings) {
+        this.strings = strings;
+    }
+
+    public void addPass(Pass pass) {
+        vmWriter.addPass(pass);
+    }
+
+    public void generate() {
+        // the class is the first node the parser adds
+        generateClass(0);
+    }
+
+    public String VMOutput() {
+        return vmWriter.vmOutput();
+    }
+
+    public VMCode VMCode() {
+        return vmWriter.code();
+    }
+
+    void generateClass(int node) {
+        className = ast.text(node);
+        int child = ast.first(node);
+        for (; child != Ast.NONE; child = ast.next(child)) {
+            switch (ast.kind(child)) {
+                case STATIC -> symTable.define(ast.text(child), ast.nameAt(ast.extra(child)), SymbolTable.Kind.STATIC);
+                case FIELD -> symTable.define(ast.text(child), ast.nameAt(ast.extra(child)), SymbolTable.Kind.FIELD);
+                default -> {
+                    if (strings != null) {
+                        strings.startClass(className, symTable.varCount(SymbolTable.Kind.STATIC));
+                    }
+                    for (; child != Ast.NONE; child = ast.next(child)) {
+                        generateSubroutine(child);
+                    }
+                    if (strings != null) {
+                        strings.writeInitializer(vmWriter);
+                        vmWriter.flush();
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    void generateSubroutine(int node) {
+        ifLabelNum = 0;
+        whileLabelNum = 0;
+        if (strings != null) {
+            strings.startSubroutine();
+        }
+        symTable.startSubroutine();
+
+        var subroutineType = TOKEN_TYPES[ast.extra(node)];
+        if (subroutineType == TokenType.METHOD) {
+            symTable.define("this", className, SymbolTable.Kind.ARG);
+        }
+
+        int child = ast.first(node);
+        for (; child != Ast.NONE; child = ast.next(child)) {
+            var kind = ast.kind(child);
+            if (kind == Ast.Kind.ARG) {
+                symTable.define(ast.text(child), ast.nameAt(ast.extra(child)), SymbolTable.Kind.ARG);
+            } else if (kind == Ast.Kind.VAR) {
+                symTable.define(ast.text(child), ast.nameAt(ast.extra(child)), SymbolTable.Kind.VAR);
+            } else {
+                break;
+            }
+        }
+
+        vmWriter.writeFunction(className + "." + ast.text(node), symTable.varCount(SymbolTable.Kind.VAR));
+
+        if (subroutineType == TokenType.CONSTRUCTOR) {
+            vmWriter.writePush(VMWriter.Segment.CONST, symTable.varCount(SymbolTable.Kind.FIELD));
+            vmWriter.writeCall("Memory.alloc", 1);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 0);
+        }
+
+        if (subroutineType == TokenType.METHOD) {
+            vmWriter.writePush(VMWriter.Segment.ARG, 0);
+            vmWriter.writePop(VMWriter.Segment.POINTER, 0);
+        }
+
+        generateStatements(child);
+        vmWriter.flush();
+    }
+
+    // generates a statement and the siblings that follow it
+    void generateStatements(int node) {
+        for (; node != Ast.NONE; node = ast.next(node)) {
+            switch (ast.kind(node)) {
+                case LET -> generateLet(node);
+                case LET_ARRAY -> generateLetArray(node);
+                case IF -> generateIf(node);
+                case WHILE -> generateWhile(node);
+                case DO -> generateDo(node);
+                case RETURN -> generateReturn(node);
+                default -> throw new IllegalStateException("not a statement: " + ast.kind(node));
+            }
+        }
+    }
+
+    void generateLet(int node) {
+        generateExpression(ast.first(node));
+        var symbol = symTable.resolve(ast.text(node));
+        if (symbol != null && Parser.kind2Segment(symbol.kind()) != null) {
+            vmWriter.writePop(Parser.kind2Segment(symbol.kind()), symbol.index());
+        }
+    }
+
+    void generateLetArray(int node) {
+        int index = ast.first(node);
+        generateExpression(index);
+        pushVariable(ast.text(node));
+        vmWriter.writeArithmetic(VMWriter.Command.ADD);
+
+        generateExpression(ast.next(index));
+        vmWriter.writePop(VMWriter.Segment.TEMP, 0);
+        vmWriter.writePop(VMWriter.Segment.POINTER, 1);
+        vmWriter.writePush(VMWriter.Segment.TEMP, 0);
+        vmWriter.writePop(VMWriter.Segment.THAT, 0);
+    }
+
+    void generateIf(int node) {
+        var labelTrue = "IF_TRUE" + ifLabelNum;
+        var labelFalse = "IF_FALSE" + ifLabelNum;
+        var labelEnd = "IF_END" + ifLabelNum;
+        ifLabelNum++;
+
+        int condition = ast.first(node);
+        int thenBlock = ast.next(condition);
+        int elseBlock = ast.next(thenBlock);
+
+        generateExpression(condition);
+        vmWriter.writeIf(labelTrue);
+        vmWriter.writeGoto(labelFalse);
+        vmWriter.writeLabel(labelTrue);
+
+        generateStatements(ast.first(thenBlock));
+        if (elseBlock != Ast.NONE) {
+            vmWriter.writeGoto(labelEnd);
+        }
+        vmWriter.writeLabel(labelFalse);
+
+        if (elseBlock != Ast.NONE) {
+            generateStatements(ast.first(elseBlock));
+            vmWriter.writeLabel(labelEnd);
+        }
+    }
+
+    void generateWhile(int node) {
+        var labelTrue = "WHILE_EXP" + whileLabelNum;
+        var labelFalse = "WHILE_END" + whileLabelNum;
+        whileLabelNum++;
+
+        int condition = ast.first(node);
+        vmWriter.writeLabel(labelTrue);
+        generateExpression(condition);
+        vmWriter.writeArithmetic(VMWriter.Command.NOT);
+        vmWriter.writeIf(labelFalse);
+
+        generateStatements(ast.first(ast.next(condition)));
+        vmWriter.writeGoto(labelTrue);
+        vmWriter.writeLabel(labelFalse);
+    }
+
+    void generateDo(int node) {
+        generateCall(ast.first(node));
+        vmWriter.writePop(VMWriter.Segment.TEMP, 0);
+    }
+
+    void generateReturn(int node) {
+        if (ast.first(node) == Ast.NONE) {
+            vmWriter.writePush(VMWriter.Segment.CONST, 0);
+        } else {
+            generateExpression(ast.first(node));
+        }
+        vmWriter.writeReturn();
+    }
+
+    void generateExpression(int node) {
+        switch (ast.kind(node)) {
+            case INT:
+                vmWriter.writePush(VMWriter.Segment.CONST, ast.value(node));
+                break;
+            case STRING:
+                var strValue = ast.text(node);
+                if (strings != null) {
+                    strings.writeUse(vmWriter, strValue);
+                } else {
+                    StringPool.writeString(vmWriter, strValue);
+                }
+                break;
+            case KEYWORD:
+                var keyword = TOKEN_TYPES[ast.value(node)];
+                if (keyword == TokenType.THIS) {
+                    vmWriter.writePush(VMWriter.Segment.POINTER, 0);
+                } else {
+                    vmWriter.writePush(VMWriter.Segment.CONST, 0);
+                    if (keyword == TokenType.TRUE)
+                        vmWriter.writeArithmetic(VMWriter.Command.NOT);
+                }
+                break;
+            case NAME:
+                pushVariable(ast.text(node));
+                break;
+            case INDEX:
+                generateExpression(ast.first(node));
+                pushVariable(ast.text(node));
+                vmWriter.writeArithmetic(VMWriter.Command.ADD);
+                vmWriter.writePop(VMWriter.Segment.POINTER, 1);
+                vmWriter.writePush(VMWriter.Segment.THAT, 0);
+                break;
+            case UNARY:
+                generateExpression(ast.first(node));
+                if (TOKEN_TYPES[ast.value(node)] == TokenType.MINUS) {
+                    vmWriter.writeArithmetic(VMWriter.Command.NEG);
+                } else {
+                    vmWriter.writeArithmetic(VMWriter.Command.NOT);
+                }
+                break;
+            case BINARY:
+                int left = ast.first(node);
+                generateExpression(left);
+                generateExpression(ast.next(left));
+                var op = TOKEN_TYPES[ast.value(node)];
+                if (op == TokenType.ASTERISK) {
+                    vmWriter.writeCall("Math.multiply", 2);
+                } else if (op == TokenType.SLASH) {
+                    vmWriter.writeCall("Math.divide", 2);
+                } else {
+                    vmWriter.writeArithmetic(Parser.typeOperator(op));
+                }
+                break;
+            case CALL:
+                generateCall(node);
+                break;
+            default:
+                throw new IllegalStateException("not an expression: " + ast.kind(node));
+        }
+    }
+
+    void generateCall(int node) {
+        var nArgs = 0;
+        String functionName;
+
+        if (ast.extra(node) == Ast.NONE) {
+            vmWriter.writePush(VMWriter.Segment.POINTER, 0);
+            functionName = className + "." + ast.text(node);
+            nArgs = 1;
+        } else {
+            var receiver = ast.nameAt(ast.extra(node));
+            var symbol = symTable.resolve(receiver);
+            if (symbol != null) {
+                vmWriter.writePush(Parser.kind2Segment(symbol.kind()), symbol.index());
+                functionName = symbol.type() + "." + ast.text(node);
+                nArgs = 1;
+            } else {
+                functionName = receiver + "." + ast.text(node);
+            }
+        }
+
+        for (int arg = ast.first(node); arg != Ast.NONE; arg = ast.next(arg)) {
+            generateExpression(arg);
+            nArgs++;
+        }
+        vmWriter.writeCall(functionName, nArgs);
+    }
+
+    private void pushVariable(String name) {
+        var symbol = symTable.resolve(name);
+        if (symbol != null && Parser.kind2Segment(symbol.kind()) != null) {
+            vmWriter.writePush(Parser.kind2Segment(symbol.kind()), symbol.index());
+        }
+    }
+}
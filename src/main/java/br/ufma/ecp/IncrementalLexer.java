@@ -0,0 +1,112 @@
+package br.ufma.ecp;
+
+import java.nio.ByteBuffer;
+
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Keeps the token stream of a document in sync with its edits. An edit is
+ * re-scanned from the last token that ends strictly before it, and scanning
+ * stops as soon as a new token lands on an old one shifted by the edit;
+ * everything after that is copied with shifted offsets and lines.
+ *
+ * Restarting at a token end is always safe: the scanner carries no state
+ * between tokens other than the line, and comments and strings are resolved
+ * by scanning forward from there.
+ */
+public class IncrementalLexer {
+    private TokenBuffer tokens;
+    private int rescanned;
+
+    public IncrementalLexer(ByteBuffer source) {
+        tokens = new Scanner(source).tokenize();
+    }
+
+    public TokenBuffer tokens() {
+        return tokens;
+    }
+
+    // how many tokens the last edit had to scan again
+    public int rescanned() {
+        return rescanned;
+    }
+
+    /**
+     * Replaces {@code removed} bytes at {@code offset} with {@code inserted}.
+     */
+    public TokenBuffer edit(int offset, int removed, byte[] inserted) {
+        ByteBuffer old = tokens.source();
+        int oldLength = old.limit();
+        ByteBuffer source = ByteBuffer.allocate(oldLength - removed + inserted.length);
+        source.put(old.slice(0, offset));
+        source.put(inserted);
+        source.put(old.slice(offset + removed, oldLength - offset - removed));
+        return edit(source.flip(), offset, removed, inserted.length);
+    }
+
+    /**
+     * Re-lexes {@code source}, which is the previous source with {@code removed}
+     * bytes at {@code offset} replaced by {@code inserted} new ones.
+     */
+    public TokenBuffer edit(ByteBuffer source, int offset, int removed, int inserted) {
+        TokenBuffer old = tokens;
+        TokenBuffer result = new TokenBuffer(source.slice(), old.pool());
+        int delta = inserted - removed;
+        int editEnd = offset + inserted;
+
+        // keep every token that ends strictly before the edit
+        int kept = 0;
+        while (kept < old.size() && old.type(kept) != TokenType.EOF && rawEnd(old, kept) < offset) {
+            kept++;
+        }
+        for (int i = 0; i < kept; i++) {
+            result.copy(old, i, 0, 0);
+        }
+
+        var scanner = new Scanner(source);
+        if (kept > 0) {
+            scanner.seek(rawEnd(old, kept - 1), old.line(kept - 1));
+        }
+
+        rescanned = 0;
+        int candidate = kept;
+        for (;;) {
+            int index = scanner.scanInto(result);
+            rescanned++;
+            int start = rawStart(result, index);
+
+            if (start >= editEnd) {
+                while (candidate < old.size() && rawStart(old, candidate) + delta < start) {
+                    candidate++;
+                }
+                if (candidate < old.size() && rawStart(old, candidate) + delta == start
+                        && old.type(candidate) == result.type(index) && old.length(candidate) == result.length(index)) {
+                    // back in step with the old stream: shift the rest
+                    int lineDelta = result.line(index) - old.line(candidate);
+                    for (int i = candidate + 1; i < old.size(); i++) {
+                        result.copy(old, i, delta, lineDelta);
+                    }
+                    break;
+                }
+            }
+
+            if (result.type(index) == TokenType.EOF) {
+                break;
+            }
+        }
+
+        tokens = result;
+        return result;
+    }
+
+    // string tokens exclude their quotes, so widen them back to the bytes they cover
+    private static int rawStart(TokenBuffer tokens, int index) {
+        return tokens.type(index) == TokenType.STRING ? tokens.start(index) - 1 : tokens.start(index);
+    }
+
+    private static int rawEnd(TokenBuffer tokens, int index) {
+        int end = tokens.start(index) + tokens.length(index);
+        return tokens.type(index) == TokenType.STRING ? end + 1 : end;
+    }
+}
@@ -0,0 +1,26 @@
+package br.ufma.ecp;
+
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Thrown by {@link Parser} and {@link AstParser} once a syntax error has
+ * been reported on stderr; the parse stops there.
+ */
+class ParseError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    static void report(int line, String where, String message) {
+        System.err.println("[line " + line + " ] Error" + where + ": " + message);
+    }
+
+    // reports the error at the token and returns the exception to throw
+    static ParseError at(TokenBuffer tokens, int token, String message) {
+        if (tokens.type(token) == TokenType.EOF) {
+            report(tokens.line(token), " at end", message);
+        } else {
+            report(tokens.line(token), " at '" + tokens.lexeme(token) + "'", message);
+        }
+        return new ParseError();
+    }
+}
@@ -1,54 +1,195 @@
 package br.ufma.ecp;
 
-import br.ufma.ecp.token.Token;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import br.ufma.ecp.opt.Pass;
+import br.ufma.ecp.token.LexemePool;
+import br.ufma.ecp.token.TokenBuffer;
 import br.ufma.ecp.token.TokenType;
 
-public class Parser {
-    private static class ParseError extends RuntimeException {};
+public class Parser implements AutoCloseable {
+
+    // past this many distinct names the pool is not worth keeping across files
+    private static final int MAX_POOLED_NAMES = 1 << 14;
+
+    public enum OutputMode {
+        VM, XML, BOTH
+    };
+
     private final StringBuilder xmlOutput = new StringBuilder();
     private final VMWriter vmWriter = new VMWriter();
     private final SymbolTable symTable = new SymbolTable();
     private final Scanner scan;
-    private Token currentToken;
-    private Token peekToken;
+    private final TokenBuffer tokens;
+    private final TokenPipeline pipeline;
+    private int currentToken = -1;
+    private int peekToken;
     private String className;
     private int ifLabelNum = 0 ;
     private int whileLabelNum = 0;
+    private boolean xml = true;
+    private ProjectIndex index;
+    private StringPool strings;
 
     public Parser (byte[] input) {
+        this(ByteBuffer.wrap(input));
+    }
+
+    public Parser (ByteBuffer input) {
+        this(input, false);
+    }
+
+    /**
+     * With {@code pipelined} set, the input is scanned on a second thread while
+     * this one parses, which pays off for large single classes.
+     */
+    public Parser (ByteBuffer input, boolean pipelined) {
         scan = new Scanner(input);
-        nextToken();
+        if (pipelined) {
+            tokens = TokenBuffer.ring(TokenPipeline.DEFAULT_CAPACITY, input.slice(), new LexemePool());
+            pipeline = new TokenPipeline(scan, tokens, TokenPipeline.DEFAULT_CAPACITY);
+            peekToken = pipeline.next(-1);
+        } else {
+            tokens = TokenBuffer.ring(4, input.slice(), new LexemePool());
+            pipeline = null;
+            peekToken = scan.scanInto(tokens);
+        }
+    }
+
+    /**
+     * Parses a streamed source; only the current and peek tokens are retained.
+     */
+    public Parser (ReadableByteChannel input) {
+        scan = new Scanner(input, Scanner.DEFAULT_WINDOW);
+        tokens = TokenBuffer.ring(4, null, new LexemePool());
+        pipeline = null;
+        peekToken = scan.scanInto(tokens);
+    }
+
+    public void reset(byte[] input) {
+        reset(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Prepares the parser for another class, keeping its scanner, token and
+     * output buffers and identifier pool, so compiling many files allocates
+     * little beyond the names and labels of each one. The output mode is
+     * kept; an output set with setOutput is dropped.
+     */
+    public void reset(ByteBuffer input) {
+        if (pipeline != null || scan.isStreaming()) {
+            throw new IllegalStateException("only a parser over a buffer can be reset");
+        }
+        if (tokens.pool().size() > MAX_POOLED_NAMES) {
+            tokens.pool().clear();
+        }
+        scan.reset(input);
+        tokens.reset(input.slice());
+        xmlOutput.setLength(0);
+        vmWriter.reset();
+        symTable.reset();
+        currentToken = -1;
+        className = null;
+        ifLabelNum = 0;
+        whileLabelNum = 0;
+        peekToken = scan.scanInto(tokens);
     }
 
     private void nextToken () {
         currentToken = peekToken;
-        peekToken = scan.nextToken();
+        peekToken = pipeline != null ? pipeline.next(currentToken) : scan.scanInto(tokens);
     }
 
     static public boolean isOperator(String op) {
         return "+=*/<>-~&|.".contains(op);
     }
 
+    static boolean isOperator(TokenType type) {
+        return switch (type) {
+            case PLUS, EQ, ASTERISK, SLASH, LT, GT, MINUS, NOT, AND, OR, DOT -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Chooses which outputs are built; both by default. Compiles that only
+     * need VM code should use {@link OutputMode#VM} and skip the parse tree.
+     */
+    public void setOutputMode(OutputMode mode) {
+        xml = mode != OutputMode.VM;
+        vmWriter.setEnabled(mode != OutputMode.XML);
+    }
+
+    /**
+     * Streams the VM code to {@code out} one subroutine at a time, so memory is
+     * bounded by the largest subroutine rather than the whole class.
+     */
+    public void setOutput(Writer out) {
+        vmWriter.setOutput(out);
+    }
+
+    /**
+     * With an index of the project, calls into its classes are checked
+     * against the declared subroutines and their number of parameters.
+     * The index is kept across {@link #reset(ByteBuffer)}.
+     */
+    public void setIndex(ProjectIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * With a pool, string literals are built once per class and shared, see
+     * {@link StringPool}. The pool is kept across {@link #reset(ByteBuffer)}.
+     */
+    public void setStringPool(StringPool strings) {
+        this.strings = strings;
+    }
+
+    // optimization passes, run on every subroutine once it is parsed
+    public void addPass(Pass pass) {
+        vmWriter.addPass(pass);
+    }
+
     public void parse() {
-        parseClass();
+        try {
+            parseClass();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops the scanner thread of a pipelined parser. parse() does this on
+     * every exit; a parser that is dropped without parsing should be closed.
+     */
+    @Override
+    public void close() {
+        if (pipeline != null) {
+            pipeline.cancel();
+        }
     }
 
     public void parseTerm() {
         printNonTerminal("term");
-        boolean currentIsUnaryOrRParen = currentToken != null && (currentTokenIs(TokenType.NOT) || currentTokenIs(TokenType.MINUS) || currentTokenIs(TokenType.RPAREN));
+        boolean currentIsUnaryOrRParen = currentToken >= 0 && (currentTokenIs(TokenType.NOT) || currentTokenIs(TokenType.MINUS) || currentTokenIs(TokenType.RPAREN));
 
-        if (TokenType.isLiteral(peekToken.getType())) {
+        if (TokenType.isLiteral(tokens.type(peekToken))) {
             if (peekTokenIs(TokenType.NUMBER)) {
-                vmWriter.writePush(VMWriter.Segment.CONST, Integer.parseInt(peekToken.getLexeme()));
+                int value = tokens.intValue(peekToken);
+                if (value < 0) {
+                    throw error(peekToken, "Integer constant above " + TokenBuffer.MAX_INT);
+                }
+                vmWriter.writePush(VMWriter.Segment.CONST, value);
             }
 
             if (peekTokenIs(TokenType.STRING)) {
-                var strValue = peekToken.getLexeme();
-                vmWriter.writePush(VMWriter.Segment.CONST, strValue.length());
-                vmWriter.writeCall("String.new", 1);
-                for (int i = 0; i < strValue.length(); i++) {
-                    vmWriter.writePush(VMWriter.Segment.CONST, strValue.charAt(i));
-                    vmWriter.writeCall("String.appendChar", 2);
+                var strValue = tokens.lexeme(peekToken);
+                if (strings != null) {
+                    strings.writeUse(vmWriter, strValue);
+                } else {
+                    StringPool.writeString(vmWriter, strValue);
                 }
             }
 
@@ -59,7 +200,7 @@ public class Parser {
             if (peekTokenIs(TokenType.IDENT)) {
                 expectPeek(TokenType.IDENT);
 
-                SymbolTable.Symbol sym = symTable.resolve(currentToken.getLexeme());
+                SymbolTable.Symbol sym = symTable.resolve(tokens.lexeme(currentToken));
 
                 if (peekTokenIs(TokenType.LPAREN) || peekTokenIs(TokenType.DOT)) {
                     parseSubRoutineCall();
@@ -91,16 +232,16 @@ public class Parser {
                 return;
             }
 
-            expectPeek(peekToken.getType());
+            expectPeek(tokens.type(peekToken));
             printNonTerminal("/term");
             return;
         }
 
-        if (TokenType.isBoolean(peekToken.getType())) {
+        if (TokenType.isBoolean(tokens.type(peekToken))) {
             expectPeek(TokenType.FALSE, TokenType.NULL, TokenType.TRUE);
 
             vmWriter.writePush(VMWriter.Segment.CONST, 0);
-            if (currentToken.getType() == TokenType.TRUE)
+            if (tokens.type(currentToken) == TokenType.TRUE)
                 vmWriter.writeArithmetic(VMWriter.Command.NOT);
 
             printNonTerminal("/term");
@@ -120,9 +261,9 @@ public class Parser {
         }
 
         if (peekTokenIs(TokenType.NOT) || peekTokenIs(TokenType.MINUS)) {
-            expectPeek(peekToken.getType());
+            expectPeek(tokens.type(peekToken));
 
-            var op = currentToken.getType();
+            var op = tokens.type(currentToken);
             parseTerm();
             if (op == TokenType.MINUS) {
                 vmWriter.writeArithmetic(VMWriter.Command.NEG);
@@ -138,7 +279,8 @@ public class Parser {
     public void parseSubRoutineCall() {
         var nArgs = 0;
 
-        var ident = currentToken.getLexeme();
+        var line = tokens.line(currentToken);
+        var ident = tokens.lexeme(currentToken);
         var symbol = symTable.resolve(ident);
         var functionName = ident + ".";
 
@@ -147,6 +289,7 @@ public class Parser {
             vmWriter.writePush(VMWriter.Segment.POINTER, 0);
             nArgs = parseExpressionList() + 1;
             expectPeek(TokenType.RPAREN);
+            checkCall(line, className, ident, true, nArgs - 1);
             functionName = className + "." + ident;
             vmWriter.writeCall(functionName, nArgs);
             return;
@@ -154,21 +297,46 @@ public class Parser {
 
         expectPeek(TokenType.DOT);
         expectPeek(TokenType.IDENT);
+        var subroutineName = tokens.lexeme(currentToken);
 
         if (symbol != null) {
-            functionName = symbol.type() + "." + currentToken.getLexeme();
+            functionName = symbol.type() + "." + tokens.lexeme(currentToken);
             vmWriter.writePush(kind2Segment(symbol.kind()), symbol.index());
             nArgs = 1;
         } else {
-            functionName += currentToken.getLexeme();
+            functionName += tokens.lexeme(currentToken);
         }
 
         expectPeek(TokenType.LPAREN);
-        nArgs += parseExpressionList();
+        var nExpressions = parseExpressionList();
+        nArgs += nExpressions;
         expectPeek(TokenType.RPAREN);
+        checkCall(line, symbol != null ? symbol.type() : ident, subroutineName, symbol != null, nExpressions);
         vmWriter.writeCall(functionName, nArgs);
     }
 
+    // classes outside the index (the OS, for one) are not checked; instance
+    // is whether the call passes an object, a variable's or this
+    private void checkCall(int line, String className, String name, boolean instance, int nExpressions) {
+        if (index == null || index.get(className) == null) return;
+
+        var subroutine = index.subroutine(className, name);
+        String message = null;
+        if (subroutine == null) {
+            message = "Class " + className + " has no subroutine " + name;
+        } else if (instance && subroutine.kind() != TokenType.METHOD) {
+            message = name + " is not a method, call it as " + className + "." + name;
+        } else if (!instance && subroutine.kind() == TokenType.METHOD) {
+            message = "Method " + name + " needs an object to be called on";
+        } else if (subroutine.parameterTypes().size() != nExpressions) {
+            message = "Expected " + subroutine.parameterTypes().size() + " arguments but got " + nExpressions;
+        }
+        if (message != null) {
+            ParseError.report(line, " at '" + className + "." + name + "'", message);
+            throw new ParseError();
+        }
+    }
+
     public int parseExpressionList() {
         printNonTerminal("expressionList");
         var nArgs = 0;
@@ -188,7 +356,7 @@ public class Parser {
 
     public void parseStatements() {
             printNonTerminal("statements");
-            while (TokenType.isStatement(peekToken.getType())) {
+            while (TokenType.isStatement(tokens.type(peekToken))) {
                 if (peekTokenIs(TokenType.LET)) {
                     parseLet();
                 }
@@ -216,9 +384,9 @@ public class Parser {
         printNonTerminal("expression");
         parseTerm();
 
-        while (isOperator(peekToken.getLexeme())) {
-            var ope = peekToken.getType();
-            expectPeek(peekToken.getType());
+        while (isOperator(tokens.type(peekToken))) {
+            var ope = tokens.type(peekToken);
+            expectPeek(tokens.type(peekToken));
             parseTerm();
             compileOperators(ope);
         }
@@ -232,7 +400,7 @@ public class Parser {
         expectPeek(TokenType.LET);
         expectPeek(TokenType.IDENT);
 
-        var symbol = symTable.resolve(currentToken.getLexeme());
+        var symbol = symTable.resolve(tokens.lexeme(currentToken));
         if (peekTokenIs(TokenType.LBRACKET)) {
             expectPeek(TokenType.LBRACKET);
             parseExpression();
@@ -362,16 +530,16 @@ public class Parser {
             }
             expectPeek(TokenType.INT, TokenType.BOOLEAN, TokenType.CHAR, TokenType.IDENT);
 
-            String type = currentToken.getLexeme();
+            String type = tokens.lexeme(currentToken);
             expectPeek(TokenType.IDENT);
-            String name = currentToken.getLexeme();
+            String name = tokens.lexeme(currentToken);
             symTable.define(name, type, kind);
 
             while (peekTokenIs(TokenType.COMMA)) {
                 expectPeek(TokenType.COMMA);
                 expectPeek(TokenType.IDENT);
 
-                name = currentToken.getLexeme();
+                name = tokens.lexeme(currentToken);
                 symTable.define(name, type, kind);
             }
 
@@ -388,12 +556,12 @@ public class Parser {
             SymbolTable.Kind kind = SymbolTable.Kind.VAR;
 
             expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
-            String type = currentToken.getLexeme();
+            String type = tokens.lexeme(currentToken);
 
             expectPeek(TokenType.IDENT);
 
             //TODO: verificar
-            String name = currentToken.getLexeme();
+            String name = tokens.lexeme(currentToken);
 
             symTable.define(name, type, kind);
 
@@ -401,7 +569,7 @@ public class Parser {
                 expectPeek(TokenType.COMMA);
                 expectPeek(TokenType.IDENT);
 
-                name = currentToken.getLexeme();
+                name = tokens.lexeme(currentToken);
                 symTable.define(name, type, kind);
             }
 
@@ -440,23 +608,27 @@ public class Parser {
 
             ifLabelNum = 0;
             whileLabelNum = 0;
+            if (strings != null) {
+                strings.startSubroutine();
+            }
 
             symTable.startSubroutine();
 
             expectPeek(TokenType.CONSTRUCTOR, TokenType.FUNCTION, TokenType.METHOD);
 
-            var subroutineType = currentToken.getType();
-            if (currentToken.getType() == TokenType.METHOD) {
+            var subroutineType = tokens.type(currentToken);
+            if (tokens.type(currentToken) == TokenType.METHOD) {
                 symTable.define("this", className, SymbolTable.Kind.ARG);
             }
             expectPeek(TokenType.VOID, TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
             expectPeek(TokenType.IDENT);
 
-            var functionName = className + "." + currentToken.getLexeme();
+            var functionName = className + "." + tokens.lexeme(currentToken);
             expectPeek(TokenType.LPAREN);
             parseParameterList();
             expectPeek(TokenType.RPAREN);
             parseSubRoutineBody(functionName, subroutineType);
+            vmWriter.flush();
             printNonTerminal("/subroutineDec");
         }
     }
@@ -468,20 +640,20 @@ public class Parser {
             SymbolTable.Kind kind = SymbolTable.Kind.ARG;
 
             expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
-            String type = currentToken.getLexeme();
+            String type = tokens.lexeme(currentToken);
 
             expectPeek(TokenType.IDENT);
-            String name = currentToken.getLexeme();
+            String name = tokens.lexeme(currentToken);
             symTable.define(name, type, kind);
 
             while (peekTokenIs(TokenType.COMMA)) {
                 expectPeek(TokenType.COMMA);
                 expectPeek(TokenType.INT, TokenType.CHAR, TokenType.BOOLEAN, TokenType.IDENT);
-                type = currentToken.getLexeme();
+                type = tokens.lexeme(currentToken);
 
                 expectPeek(TokenType.IDENT);
 
-                name = currentToken.getLexeme();
+                name = tokens.lexeme(currentToken);
                 symTable.define(name, type, kind);
 
             }
@@ -494,17 +666,24 @@ public class Parser {
         printNonTerminal("class");
         expectPeek(TokenType.CLASS);
         expectPeek(TokenType.IDENT);
-        className = currentToken.getLexeme();
+        className = tokens.lexeme(currentToken);
         expectPeek(TokenType.LBRACE);
         parseClassVarDec();
+        if (strings != null) {
+            strings.startClass(className, symTable.varCount(SymbolTable.Kind.STATIC));
+        }
         parseSubRoutineDec();
+        if (strings != null) {
+            strings.writeInitializer(vmWriter);
+            vmWriter.flush();
+        }
         expectPeek(TokenType.RBRACE);
         printNonTerminal("/class");
     }
 
     private void expectPeek(TokenType... types) {
         for (TokenType type: types) {
-            if (peekToken.getType() == type) {
+            if (tokens.type(peekToken) == type) {
                 expectPeek(type);
                 return;
             }
@@ -513,9 +692,11 @@ public class Parser {
     }
 
     private void expectPeek(TokenType type) {
-        if (peekToken.getType() == type) {
+        if (tokens.type(peekToken) == type) {
             nextToken();
-            xmlOutput.append(String.format("%s\r\n", currentToken.toString()));
+            if (xml) {
+                xmlOutput.append(tokens.token(currentToken).toString()).append("\r\n");
+            }
             return;
         }
         throw error(peekToken, "Expected " + type.name());
@@ -526,36 +707,32 @@ public class Parser {
     }
 
     private void printNonTerminal(String nterminal) {
-        xmlOutput.append(String.format("<%s>\r\n", nterminal));
+        if (xml) {
+            xmlOutput.append('<').append(nterminal).append(">\r\n");
+        }
     }
 
     boolean peekTokenIs(TokenType type) {
-        return peekToken.getType() == type;
+        return tokens.type(peekToken) == type;
     }
 
     boolean currentTokenIs(TokenType type) {
-        return currentToken.getType() == type;
+        return tokens.type(currentToken) == type;
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + " ] Error" + where + ": " + message);
-    }
-
-    private ParseError error(Token token, String message) {
-        if (token.getType() == TokenType.EOF) {
-            report(token.getLine(), " at end", message);
-        }
-
-        if (token.getType() != TokenType.EOF) {
-            report(token.getLine(), " at '" + token.getLexeme() + "'", message);
-        }
-        return new ParseError();
+    private ParseError error(int token, String message) {
+        return ParseError.at(tokens, token, message);
     }
 
     public String VMOutput() {
         return vmWriter.vmOutput();
     }
 
+    // the generated code as typed instructions, for passes that work on it directly
+    public VMCode VMCode() {
+        return vmWriter.code();
+    }
+
     public void compileOperators(TokenType type) {
 
         if (type == TokenType.ASTERISK) {
@@ -567,7 +744,7 @@ public class Parser {
         }
     }
 
-    private VMWriter.Command typeOperator(TokenType type) {
+    static VMWriter.Command typeOperator(TokenType type) {
         if (type == TokenType.PLUS)
             return VMWriter.Command.ADD;
         if (type == TokenType.MINUS)
@@ -585,7 +762,7 @@ public class Parser {
         return null;
     }
 
-    private VMWriter.Segment kind2Segment(SymbolTable.Kind kind) {
+    static VMWriter.Segment kind2Segment(SymbolTable.Kind kind) {
         if (kind == SymbolTable.Kind.STATIC)
             return VMWriter.Segment.STATIC;
         if (kind == SymbolTable.Kind.FIELD)
@@ -0,0 +1,365 @@
+package br.ufma.ecp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Signatures of every class of a project: statics, fields and subroutines
+ * with their kind, return type and parameter types. It is built by a
+ * pre-pass that reads declarations and skips subroutine bodies, one file per
+ * task in parallel, and is immutable once built, so compiles running on
+ * several threads can share it.
+ *
+ * Extracted classes can be cached in a binary file keyed by the path of each
+ * source, with a SHA-256 digest of its content, so unchanged files are not
+ * scanned again.
+ */
+public final class ProjectIndex {
+
+    public static record Variable(String name, String type) {
+    }
+
+    public static record Subroutine(String name, TokenType kind, String returnType, List<String> parameterTypes) {
+    }
+
+    public static record ClassInfo(String name, List<Variable> statics, List<Variable> fields,
+                                   Map<String, Subroutine> subroutines) {
+    }
+
+    // a class of the cache and the digest of the source it was extracted from
+    record CacheEntry(byte[] digest, ClassInfo info) {
+    }
+
+    private static final int CACHE_MAGIC = 0x4A494458; // "JIDX"
+    private static final int CACHE_VERSION = 2;
+    private static final int DIGEST_LENGTH = 32;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final Map<String, ClassInfo> classes;
+
+    private ProjectIndex(Map<String, ClassInfo> classes) {
+        this.classes = Map.copyOf(classes);
+    }
+
+    public static ProjectIndex of(Collection<ClassInfo> classes) {
+        Map<String, ClassInfo> byName = new HashMap<>();
+        for (ClassInfo info : classes) {
+            byName.put(info.name(), info);
+        }
+        return new ProjectIndex(byName);
+    }
+
+    public ClassInfo get(String className) {
+        return classes.get(className);
+    }
+
+    // null when the class or the subroutine is not part of the project
+    public Subroutine subroutine(String className, String name) {
+        ClassInfo info = classes.get(className);
+        return info == null ? null : info.subroutines().get(name);
+    }
+
+    public Collection<ClassInfo> classes() {
+        return classes.values();
+    }
+
+    public static ProjectIndex build(List<Path> files) throws IOException {
+        return build(files, null);
+    }
+
+    /**
+     * Indexes the files in parallel, reusing and then rewriting the cache
+     * file when one is given. Files that do not parse are left out; their
+     * compile reports the error. A cache that cannot be written only costs
+     * a warning.
+     */
+    public static ProjectIndex build(List<Path> files, Path cache) throws IOException {
+        Map<String, CacheEntry> cached = cache != null ? readCache(cache) : Map.of();
+        Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+        Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+        AtomicBoolean extracted = new AtomicBoolean();
+
+        try {
+            files.parallelStream().forEach(file -> {
+                byte[] source;
+                try {
+                    source = Files.readAllBytes(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                String key = file.toAbsolutePath().normalize().toString();
+                byte[] digest = digest(source);
+                CacheEntry entry = cached.get(key);
+                ClassInfo info;
+                if (entry != null && Arrays.equals(entry.digest(), digest)) {
+                    info = entry.info();
+                } else {
+                    info = extract(ByteBuffer.wrap(source));
+                    extracted.set(true);
+                }
+                if (info != null) {
+                    entries.put(key, new CacheEntry(digest, info));
+                    classes.put(info.name(), info);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        if (cache != null && (extracted.get() || !entries.keySet().equals(cached.keySet()))) {
+            try {
+                writeCache(cache, entries);
+            } catch (IOException e) {
+                System.err.println("warning: could not write the index cache " + cache + ": " + e);
+            }
+        }
+        return new ProjectIndex(classes);
+    }
+
+    static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the declarations of one class, skipping subroutine bodies by
+     * brace depth. Returns null if the declarations do not parse.
+     */
+    public static ClassInfo extract(ByteBuffer source) {
+        var reader = new DeclarationReader(source);
+        try {
+            reader.expect(TokenType.CLASS);
+            String name = reader.expect(TokenType.IDENT);
+            reader.expect(TokenType.LBRACE);
+
+            List<Variable> statics = new ArrayList<>();
+            List<Variable> fields = new ArrayList<>();
+            Map<String, Subroutine> subroutines = new HashMap<>();
+
+            TokenType next = reader.next();
+            while (next == TokenType.STATIC || next == TokenType.FIELD) {
+                List<Variable> vars = next == TokenType.STATIC ? statics : fields;
+                String type = reader.type(reader.next());
+                do {
+                    vars.add(new Variable(reader.expect(TokenType.IDENT), type));
+                } while (reader.next() == TokenType.COMMA);
+                reader.check(TokenType.SEMICOLON);
+                next = reader.next();
+            }
+
+            while (next == TokenType.CONSTRUCTOR || next == TokenType.FUNCTION || next == TokenType.METHOD) {
+                TokenType kind = next;
+                String returnType = reader.type(reader.next());
+                String subroutine = reader.expect(TokenType.IDENT);
+                reader.expect(TokenType.LPAREN);
+
+                List<String> parameters = new ArrayList<>();
+                next = reader.next();
+                while (next != TokenType.RPAREN) {
+                    if (!parameters.isEmpty()) {
+                        reader.check(TokenType.COMMA);
+                        next = reader.next();
+                    }
+                    parameters.add(reader.type(next));
+                    reader.expect(TokenType.IDENT);
+                    next = reader.next();
+                }
+                subroutines.put(subroutine, new Subroutine(subroutine, kind, returnType, List.copyOf(parameters)));
+
+                reader.expect(TokenType.LBRACE);
+                reader.skipBlock();
+                next = reader.next();
+            }
+
+            reader.check(TokenType.RBRACE);
+            return new ClassInfo(name, List.copyOf(statics), List.copyOf(fields), Map.copyOf(subroutines));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // token-level reader for the declarations; any mismatch throws IllegalArgumentException
+    private static class DeclarationReader {
+        private final Scanner scan;
+        private final TokenBuffer tokens;
+        private int current;
+
+        DeclarationReader(ByteBuffer source) {
+            scan = new Scanner(source);
+            tokens = TokenBuffer.ring(4, source.slice(), null);
+        }
+
+        TokenType next() {
+            current = scan.scanInto(tokens);
+            return tokens.type(current);
+        }
+
+        void check(TokenType type) {
+            if (tokens.type(current) != type) {
+                throw new IllegalArgumentException("expected " + type);
+            }
+        }
+
+        String expect(TokenType type) {
+            next();
+            check(type);
+            return tokens.lexeme(current);
+        }
+
+        // int, char, boolean, a class name or, for return types, void
+        String type(TokenType type) {
+            if (type != TokenType.INT && type != TokenType.CHAR && type != TokenType.BOOLEAN
+                    && type != TokenType.VOID && type != TokenType.IDENT) {
+                throw new IllegalArgumentException("expected a type");
+            }
+            return tokens.lexeme(current);
+        }
+
+        // past the brace closing the block just opened
+        void skipBlock() {
+            for (int depth = 1; depth > 0; ) {
+                switch (next()) {
+                    case LBRACE -> depth++;
+                    case RBRACE -> depth--;
+                    case EOF -> throw new IllegalArgumentException("unterminated block");
+                    default -> { }
+                }
+            }
+        }
+    }
+
+    // a missing, stale or damaged cache is just empty
+    static Map<String, CacheEntry> readCache(Path cache) {
+        if (!Files.isRegularFile(cache)) return Map.of();
+
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cache)))) {
+            if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION) return Map.of();
+
+            int count = in.readInt();
+            Map<String, CacheEntry> entries = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                byte[] digest = new byte[DIGEST_LENGTH];
+                in.readFully(digest);
+                String name = in.readUTF();
+                List<Variable> statics = readVariables(in);
+                List<Variable> fields = readVariables(in);
+                int nSubroutines = in.readUnsignedShort();
+                Map<String, Subroutine> subroutines = new HashMap<>();
+                for (int j = 0; j < nSubroutines; j++) {
+                    TokenType kind = TYPES[in.readUnsignedByte()];
+                    String subroutine = in.readUTF();
+                    String returnType = in.readUTF();
+                    String[] parameters = new String[in.readUnsignedShort()];
+                    for (int k = 0; k < parameters.length; k++) {
+                        parameters[k] = in.readUTF();
+                    }
+                    subroutines.put(subroutine, new Subroutine(subroutine, kind, returnType, List.of(parameters)));
+                }
+                entries.put(key, new CacheEntry(digest, new ClassInfo(name, statics, fields, Map.copyOf(subroutines))));
+            }
+            return entries;
+        } catch (IOException | RuntimeException e) {
+            return Map.of();
+        }
+    }
+
+    private static List<Variable> readVariables(DataInputStream in) throws IOException {
+        Variable[] vars = new Variable[in.readUnsignedShort()];
+        for (int i = 0; i < vars.length; i++) {
+            vars[i] = new Variable(in.readUTF(), in.readUTF());
+        }
+        return List.of(vars);
+    }
+
+    /**
+     * Written next to the cache and moved over it, so readers never see half
+     * a file where the file system can move atomically. The temporary file
+     * is removed if anything fails.
+     */
+    static void writeCache(Path cache, Map<String, CacheEntry> entries) throws IOException {
+        Path tmp = cache.resolveSibling(cache.getFileName() + ".tmp");
+        try {
+            writeEntries(tmp, entries);
+            try {
+                Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    private static void writeEntries(Path tmp, Map<String, CacheEntry> entries) throws IOException {
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeInt(CACHE_VERSION);
+            out.writeInt(entries.size());
+            for (var entry : entries.entrySet()) {
+                ClassInfo info = entry.getValue().info();
+                out.writeUTF(entry.getKey());
+                out.write(entry.getValue().digest());
+                out.writeUTF(info.name());
+                writeVariables(out, info.statics());
+                writeVariables(out, info.fields());
+                writeCount(out, info.subroutines().size());
+                for (Subroutine subroutine : info.subroutines().values()) {
+                    out.writeByte(subroutine.kind().ordinal());
+                    out.writeUTF(subroutine.name());
+                    out.writeUTF(subroutine.returnType());
+                    writeCount(out, subroutine.parameterTypes().size());
+                    for (String parameter : subroutine.parameterTypes()) {
+                        out.writeUTF(parameter);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void writeVariables(DataOutputStream out, List<Variable> vars) throws IOException {
+        writeCount(out, vars.size());
+        for (Variable var : vars) {
+            out.writeUTF(var.name());
+            out.writeUTF(var.type());
+        }
+    }
+
+    // counts are read back as unsigned shorts
+    private static void writeCount(DataOutputStream out, int count) throws IOException {
+        if (count > 0xFFFF) {
+            throw new IOException("too many declarations to cache: " + count);
+        }
+        out.writeShort(count);
+    }
+}
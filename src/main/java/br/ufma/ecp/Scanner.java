@@ -2,48 +2,143 @@ package br.ufma.ecp;
 
 import static br.ufma.ecp.token.TokenType.*;
 
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import br.ufma.ecp.token.Keywords;
 import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
 import br.ufma.ecp.token.TokenType;
 
 public class Scanner {
-    private final byte[] input;
+    public static final int DEFAULT_WINDOW = 8192;
+
+    private final ReadableByteChannel channel;
+    private final ByteSearch search;
+    private ByteBuffer input;
+    private int limit;
     private int current;
     private int start;
+    private int length;
     private int line = 1;
-    private static final Map<String, TokenType> keywords;
+    private String error;
+
+    private static final String UNTERMINATED_COMMENT = "unterminated comment";
+
+    // character classes for the byte dispatch table
+    private static final byte OTHER = 0;
+    private static final byte END = 1;
+    private static final byte BLANK = 2;
+    private static final byte NEWLINE = 3;
+    private static final byte DIGIT = 4;
+    private static final byte ALPHA = 5;
+    private static final byte QUOTE = 6;
+    private static final byte SYMBOL = 7;
+
+    private static final byte[] charClass = new byte[256];
+    private static final TokenType[] symbols = new TokenType[256];
 
     static {
-        keywords = new HashMap<>();
+        charClass[0] = END;
+        charClass[' '] = BLANK;
+        charClass['\t'] = BLANK;
+        charClass['\r'] = BLANK;
+        charClass['\n'] = NEWLINE;
+        charClass['"'] = QUOTE;
+        charClass['_'] = ALPHA;
+        for (char c = '0'; c <= '9'; c++) charClass[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) charClass[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) charClass[c] = ALPHA;
 
         for (TokenType token : TokenType.values()) {
-            if (TokenType.isKeyword(token)) {
-                keywords.put(token.toString().toLowerCase(), token);
+            if (token.getType() != null && TokenType.isSymbol(token.getType().toString().charAt(0))) {
+                char c = token.getType().toString().charAt(0);
+                charClass[c] = SYMBOL;
+                symbols[c] = token;
             }
         }
     }
 
     public Scanner (byte[] input) {
-        this.input = input;
+        this(ByteBuffer.wrap(input));
+    }
+
+    /**
+     * Scans the remaining bytes of the buffer in place, without copying them.
+     * Heap, direct and memory-mapped buffers are all accepted.
+     */
+    public Scanner (ByteBuffer input) {
+        this(input, ByteSearch.get());
+    }
+
+    Scanner (ByteBuffer input, ByteSearch search) {
+        this.input = input.slice();
+        this.search = search;
+        channel = null;
+        limit = this.input.limit();
+        current = 0;
+        start = 0;
+    }
+
+    /**
+     * Streams the input through a fixed-size window that is refilled from the
+     * channel. Only the bytes of the token being scanned are kept, so memory
+     * stays bounded by the window (or the longest single token).
+     */
+    public Scanner (ReadableByteChannel channel, int windowSize) {
+        this.channel = channel;
+        search = ByteSearch.get();
+        input = ByteBuffer.allocate(windowSize);
+        limit = 0;
+        current = 0;
+        start = 0;
+    }
+
+    public Scanner (InputStream input, int windowSize) {
+        this(Channels.newChannel(input), windowSize);
+    }
+
+    /**
+     * Starts over on a new input, so one scanner can be reused for many files.
+     */
+    public void reset(ByteBuffer input) {
+        if (channel != null) {
+            throw new IllegalStateException("a streaming scanner cannot be reset");
+        }
+        this.input = input.slice();
+        limit = this.input.limit();
         current = 0;
         start = 0;
+        length = 0;
+        line = 1;
+        error = null;
+    }
+
+    // resumes scanning at a token boundary already known to be at the given line
+    void seek(int position, int line) {
+        current = position;
+        start = position;
+        this.line = line;
+    }
+
+    public boolean isStreaming() {
+        return channel != null;
     }
 
     private char peek () {
-        if (current < input.length) {
-            return (char)input[current];
+        if (current < limit || fill()) {
+            return (char)input.get(current);
         }
         return 0;
     }
 
     private char peekNext() {
-        int next = current + 1;
-
-        if (next < input.length) {
-            return (char) input[next];
+        if (current + 1 < limit || (fill() && current + 1 < limit)) {
+            return (char) input.get(current + 1);
         }
         return 0;
     }
@@ -55,138 +150,231 @@ public class Scanner {
         }
     }
 
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-                (c >= 'A' && c <= 'Z') ||
-                c == '_';
+    // consumes a byte that belongs to no token, so the window can drop it
+    private void skip() {
+        advance();
+        start = current;
+    }
+
+    // slides the current token to the front of the window and reads more input
+    private boolean fill() {
+        if (channel == null || !channel.isOpen()) {
+            return false;
+        }
+
+        input.limit(limit).position(start);
+        input.compact();
+        current -= start;
+        limit -= start;
+        start = 0;
+
+        if (limit == input.capacity()) {
+            // a single token longer than the window
+            input = ByteBuffer.allocate(input.capacity() * 2).put(input.flip());
+        }
+
+        try {
+            int n;
+            do {
+                n = channel.read(input);
+            } while (n == 0);
+
+            if (n < 0) {
+                channel.close();
+                return false;
+            }
+            limit += n;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte classOf(char c) {
+        return charClass[c & 0xff];
+    }
+
+    private boolean isDigit(char c) {
+        return classOf(c) == DIGIT;
     }
 
     private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || Character.isDigit((c));
+        byte cls = classOf(c);
+        return cls == ALPHA || cls == DIGIT;
     }
 
-    private Token identifier() {
+    private TokenType identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String id = new String(input, start, current-start, StandardCharsets.UTF_8)  ;
-        TokenType type = keywords.get(id);
+        length = current - start;
+        TokenType type = Keywords.lookup(input, start, length);
         if (type == null) type = IDENT;
-        return new Token(type, id, line);
+        return type;
     }
 
-    private Token number() {
-        while (Character.isDigit(peek())) {
+    private TokenType number() {
+        while (isDigit(peek())) {
             advance();
         }
 
-        String num = new String(input, start, current-start, StandardCharsets.UTF_8)  ;
-        return new Token(NUMBER, num, line);
+        length = current - start;
+        return NUMBER;
     }
 
-    private Token string () {
+    private TokenType string () {
         advance();
         start = current;
         while (peek() != '"' && peek() != 0) {
             advance();
         }
-        String s = new String(input, start, current-start, StandardCharsets.UTF_8);
-        Token token = new Token (TokenType.STRING,s, line);
+        length = current - start;
         advance();
-        return token;
+        return STRING;
     }
 
 
-    private void skipWhitespace() {
-        char ch = peek();
-        while (ch == ' ' || ch == '\r' || ch == '\t' || ch == '\n') {
-            if (ch == '\n') {
-                line++;
+    /**
+     * Skips any run of blanks and comments in a single loop, so consecutive
+     * comments never grow the stack. Returns false when a block comment is
+     * left open at the end of the input.
+     */
+    private boolean skipTrivia() {
+        for (;;) {
+            char ch = peek();
+            byte cls = classOf(ch);
+
+            if (cls == BLANK || cls == NEWLINE) {
+                skipBlanks();
+            } else if (ch == '/' && peekNext() == '/') {
+                skipLineComment();
+            } else if (ch == '/' && peekNext() == '*') {
+                if (!skipBlockComment()) {
+                    return false;
+                }
+            } else {
+                return true;
             }
-
-            advance();
-            ch = peek();
         }
     }
 
-    private void skipLineComments() {
-        while (peek() != '\n' && peek() != 0) {
-            advance();
-        }
+    // jumps over the window in bulk, counting the newlines it passes
+    private void skipTo(int end) {
+        line += search.count(input, current, end, (byte) '\n');
+        current = end;
+        start = current;
+    }
+
+    private void skipBlanks() {
+        do {
+            skipTo(search.skipBlanks(input, current, limit));
+        } while (current == limit && fill());
+    }
+
+    private void skipLineComment() {
+        do {
+            // nothing to count: the search stops at the first newline
+            current = search.indexOf(input, current, limit, (byte) '\n', (byte) 0);
+            start = current;
+        } while (current == limit && fill());
+
         if (peek() == '\n') {
             line++;
-            advance();
+            skip();
         }
     }
 
-    private void skikBlockComments() {
-        boolean endComment = Boolean.FALSE;
-        advance();
+    private boolean skipBlockComment() {
+        skip();
 
-        while (!endComment) {
-            char ch = peek();
+        for (;;) {
+            skipTo(search.indexOf(input, current, limit, (byte) '*', (byte) 0));
 
-            if (ch == '\n') {
-                line++;
+            if (current == limit) {
+                if (!fill()) {
+                    return false;
+                }
+                continue;
             }
 
-            if (ch == 0) {
-                System.exit(1);
+            if (peek() == 0) {
+                return false;
             }
 
-            advance();
-            if (ch == '*') {
-                while (peek() == '*') {
-                    advance();
-                }
+            skip();
+            while (peek() == '*') {
+                skip();
+            }
 
-                if (peek() == '/') {
-                    endComment = Boolean.TRUE;
-                    advance();
-                }
+            if (peek() == '/') {
+                skip();
+                return true;
             }
         }
     }
 
     public Token nextToken () {
-        skipWhitespace();
-
-        start = current;
-        char ch = peek();
-
-        if (Character.isDigit(ch)) {
-            return number();
+        TokenType type = scan();
+        if (error != null) {
+            return new Token(type, error, line);
         }
-
-        if (isAlpha(ch)) {
-            return identifier();
+        if (type.text() != null) {
+            return new Token(type, type.text(), line);
         }
+        return new Token(type, TokenBuffer.decode(input, start, length), line);
+    }
 
-        if (ch == '"') {
-            return string();
+    /**
+     * Scans the next token straight into the buffer without allocating it.
+     * Returns the index of the new token.
+     */
+    public int scanInto(TokenBuffer tokens) {
+        TokenType type = scan();
+        if (error != null) {
+            return tokens.add(type, start, length, line, error);
+        }
+        if (channel != null && tokens.hasText(type)) {
+            // the window moves on, so a streamed lexeme has to be kept as a String
+            return tokens.add(type, start, length, line, TokenBuffer.decode(input, start, length));
         }
+        return tokens.add(type, start, length, line);
+    }
+
+    public TokenBuffer tokenize() {
+        TokenBuffer tokens = new TokenBuffer(input);
+        while (tokens.type(scanInto(tokens)) != EOF);
+        return tokens;
+    }
 
-        if (ch == 0) {
-            return new Token(EOF, "EOF", line);
+    private TokenType scan () {
+        error = null;
+        if (!skipTrivia()) {
+            start = current;
+            length = 0;
+            error = UNTERMINATED_COMMENT;
+            return ILLEGAL;
         }
 
-        for (TokenType token : TokenType.values()) {
-            if (token.getType() != null && ch == token.getType().toString().charAt(0)) {
-                if (token.getType().toString().equals("/")) {
-                    if (peekNext() == '/') {
-                        skipLineComments();
-                        return nextToken();
-                    }
-
-                    if (peekNext() == '*') {
-                        skikBlockComments();
-                        return nextToken();
-                    }
-                }
+        start = current;
+        char ch = peek();
 
+        switch (classOf(ch)) {
+            case DIGIT:
+                return number();
+            case ALPHA:
+                return identifier();
+            case QUOTE:
+                return string();
+            case END:
+                length = 0;
+                return EOF;
+            case SYMBOL:
                 advance();
-                return new Token(token, token.getType().toString(), line);
-            }
+                length = 1;
+                return symbols[ch];
+            default:
+                advance();
+                length = 1;
+                return ILLEGAL;
         }
-        return new Token(ILLEGAL, Character.toString(ch), line);
     }
 }
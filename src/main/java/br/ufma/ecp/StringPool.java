@@ -0,0 +1,141 @@
+package br.ufma.ecp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the string literals of a class in statics after the declared ones,
+ * instead of building a new String every time a literal is evaluated. The
+ * literals are built together by a generated function, Class.$strings, that
+ * each use calls when its static is still 0:
+ *
+ *   push static n; if-goto STRING_k; call Class.$strings 0; pop temp 0;
+ *   label STRING_k; push static n
+ *
+ * Every use of a literal then shares one String, so code that changes or
+ * disposes of a literal string must not be compiled with a pool.
+ *
+ * The Hack VM has {@link #MAX_STATICS} static words for the whole program.
+ * A pool counts the declared statics of every class it compiles plus its
+ * own; once they are used up, further literals are built inline as without
+ * a pool. Statics of classes compiled without the pool, the OS among them,
+ * are not counted.
+ */
+public class StringPool {
+    public static final String INITIALIZER = "$strings";
+    // RAM 16 to 255
+    public static final int MAX_STATICS = 240;
+
+    private final Map<String, Integer> literals = new LinkedHashMap<>();
+    private String className;
+    private int base;
+    private int labelNum;
+    private int statics;
+
+    private int pooled;
+    private int uses;
+    private int inlined;
+    private long inlineSize;
+    private long pooledSize;
+    private long savedPerEvaluation;
+
+    // the declared statics come first, so the pool starts at staticCount
+    void startClass(String className, int staticCount) {
+        this.className = className;
+        base = staticCount;
+        statics += staticCount;
+        literals.clear();
+    }
+
+    void startSubroutine() {
+        labelNum = 0;
+    }
+
+    void writeUse(VMWriter vmWriter, String literal) {
+        Integer index = literals.get(literal);
+        if (index == null) {
+            if (statics >= MAX_STATICS) {
+                writeString(vmWriter, literal);
+                inlined++;
+                return;
+            }
+            index = base + literals.size();
+            literals.put(literal, index);
+            statics++;
+        }
+        var label = "STRING" + labelNum;
+        labelNum++;
+
+        vmWriter.writePush(VMWriter.Segment.STATIC, index);
+        vmWriter.writeIf(label);
+        vmWriter.writeCall(className + "." + INITIALIZER, 0);
+        vmWriter.writePop(VMWriter.Segment.TEMP, 0);
+        vmWriter.writeLabel(label);
+        vmWriter.writePush(VMWriter.Segment.STATIC, index);
+
+        uses++;
+        inlineSize += inlineSize(literal);
+        pooledSize += 6;
+        // push, if-goto and push once the pool is built
+        savedPerEvaluation += inlineSize(literal) - 3;
+    }
+
+    // the function building the literals used since startClass, if any
+    void writeInitializer(VMWriter vmWriter) {
+        if (literals.isEmpty()) return;
+
+        vmWriter.writeFunction(className + "." + INITIALIZER, 0);
+        for (var literal : literals.entrySet()) {
+            writeString(vmWriter, literal.getKey());
+            vmWriter.writePop(VMWriter.Segment.STATIC, literal.getValue());
+            pooledSize += inlineSize(literal.getKey()) + 1;
+        }
+        vmWriter.writePush(VMWriter.Segment.CONST, 0);
+        vmWriter.writeReturn();
+
+        pooled += literals.size();
+        pooledSize += 3;
+    }
+
+    static void writeString(VMWriter vmWriter, String literal) {
+        vmWriter.writePush(VMWriter.Segment.CONST, literal.length());
+        vmWriter.writeCall("String.new", 1);
+        for (int i = 0; i < literal.length(); i++) {
+            vmWriter.writePush(VMWriter.Segment.CONST, literal.charAt(i));
+            vmWriter.writeCall("String.appendChar", 2);
+        }
+    }
+
+    private static int inlineSize(String literal) {
+        return 2 + 2 * literal.length();
+    }
+
+    // distinct literals pooled so far, counted per class
+    public int pooled() {
+        return pooled;
+    }
+
+    public int uses() {
+        return uses;
+    }
+
+    // uses built inline because the static segment was full
+    public int inlined() {
+        return inlined;
+    }
+
+    // instructions the uses would have taken without the pool
+    public long inlineSize() {
+        return inlineSize;
+    }
+
+    // instructions of the uses and the initializers
+    public long pooledSize() {
+        return pooledSize;
+    }
+
+    // executed instructions saved each time every use is evaluated once more
+    public long savedPerEvaluation() {
+        return savedPerEvaluation;
+    }
+}
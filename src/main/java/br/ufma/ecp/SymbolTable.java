@@ -1,8 +1,13 @@
 package br.ufma.ecp;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Both scopes share one open-addressing table keyed by name: a slot holds the
+ * class symbol and the subroutine symbol of that name, each stamped with the
+ * generation it was defined in. Resolving is a single probe, and starting a
+ * subroutine (or a new class) just bumps a generation instead of clearing.
+ */
 public class SymbolTable {
 
     public enum Kind {
@@ -12,45 +17,131 @@ public class SymbolTable {
     public static record Symbol(String name, String type, Kind kind, int index) {
     }
 
-    private final Map<String, Symbol> classScope = new HashMap<>();
-    private final Map<String, Symbol> subroutineScope = new HashMap<>();
-    private final Map<Kind, Integer> countVars = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 64;
 
-    public SymbolTable() {
-        countVars.put(Kind.ARG, 0);
-        countVars.put(Kind.VAR, 0);
-        countVars.put(Kind.STATIC, 0);
-        countVars.put(Kind.FIELD, 0);
-    }
+    private String[] names = new String[INITIAL_CAPACITY];
+    private Symbol[] classSymbols = new Symbol[INITIAL_CAPACITY];
+    private Symbol[] subroutineSymbols = new Symbol[INITIAL_CAPACITY];
+    private int[] classGenerations = new int[INITIAL_CAPACITY];
+    private int[] subroutineGenerations = new int[INITIAL_CAPACITY];
+    private int used;
 
-    public void startSubroutine() {
-        subroutineScope.clear();
-        countVars.put(Kind.ARG, 0);
-        countVars.put(Kind.VAR, 0);
+    private int classGeneration = 1;
+    private int subroutineGeneration = 1;
+    private final int[] counts = new int[Kind.values().length];
+
+    // forgets the class scope too, for the next class
+    public void reset() {
+        if (++classGeneration == 0) {
+            Arrays.fill(classGenerations, 0);
+            classGeneration = 1;
+        }
+        counts[Kind.STATIC.ordinal()] = 0;
+        counts[Kind.FIELD.ordinal()] = 0;
+        startSubroutine();
     }
 
-    private Map<String,Symbol> scope (Kind kind) {
-        if (kind == Kind.STATIC || kind == Kind.FIELD){
-            return classScope;
+    public void startSubroutine() {
+        if (++subroutineGeneration == 0) {
+            Arrays.fill(subroutineGenerations, 0);
+            subroutineGeneration = 1;
         }
-        return subroutineScope;
+        counts[Kind.ARG.ordinal()] = 0;
+        counts[Kind.VAR.ordinal()] = 0;
     }
 
     void define(String name, String type, Kind kind) {
-        Map<String,Symbol> scopeTable = scope(kind);
-        if (scopeTable.get(name) != null) return;
-
-        Symbol s = new Symbol(name, type, kind, varCount(kind));
-        scopeTable.put(name, s);
+        int slot = slot(name);
+        if (names[slot] == null) {
+            if (2 * (used + 1) > names.length) {
+                rehash();
+                slot = slot(name);
+            }
+            names[slot] = name;
+            used++;
+        }
 
-        countVars.put(kind, countVars.get(kind) + 1);
+        if (kind == Kind.STATIC || kind == Kind.FIELD) {
+            if (classGenerations[slot] == classGeneration) return;
+            classSymbols[slot] = new Symbol(name, type, kind, counts[kind.ordinal()]++);
+            classGenerations[slot] = classGeneration;
+        } else {
+            if (subroutineGenerations[slot] == subroutineGeneration) return;
+            subroutineSymbols[slot] = new Symbol(name, type, kind, counts[kind.ordinal()]++);
+            subroutineGenerations[slot] = subroutineGeneration;
+        }
     }
 
     public Symbol resolve (String name) {
-        return subroutineScope.get(name) != null ? subroutineScope.get(name) : classScope.get(name);
+        int slot = slot(name);
+        if (subroutineGenerations[slot] == subroutineGeneration) {
+            return subroutineSymbols[slot];
+        }
+        if (classGenerations[slot] == classGeneration) {
+            return classSymbols[slot];
+        }
+        return null;
     }
 
     int varCount(Kind kind) {
-        return countVars.get(kind);
+        return counts[kind.ordinal()];
+    }
+
+    // the slot holding name, or the empty slot where it would go
+    private int slot(String name) {
+        int mask = names.length - 1;
+        int h = name.hashCode();
+        int i = (h ^ (h >>> 16)) & mask;
+        String n;
+        while ((n = names[i]) != null && n != name && !n.equals(name)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    // names defined in earlier classes or subroutines are dropped on the way
+    private void rehash() {
+        String[] oldNames = names;
+        Symbol[] oldClassSymbols = classSymbols;
+        Symbol[] oldSubroutineSymbols = subroutineSymbols;
+        int[] oldClassGenerations = classGenerations;
+        int[] oldSubroutineGenerations = subroutineGenerations;
+
+        int live = 0;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null && (oldClassGenerations[i] == classGeneration
+                    || oldSubroutineGenerations[i] == subroutineGeneration)) {
+                live++;
+            }
+        }
+        int capacity = oldNames.length;
+        while (2 * (live + 1) > capacity / 2) {
+            capacity *= 2;
+        }
+
+        names = new String[capacity];
+        classSymbols = new Symbol[capacity];
+        subroutineSymbols = new Symbol[capacity];
+        classGenerations = new int[capacity];
+        subroutineGenerations = new int[capacity];
+        used = 0;
+
+        for (int i = 0; i < oldNames.length; i++) {
+            boolean inClass = oldClassGenerations[i] == classGeneration;
+            boolean inSubroutine = oldSubroutineGenerations[i] == subroutineGeneration;
+            if (oldNames[i] == null || !(inClass || inSubroutine)) continue;
+
+            int slot = slot(oldNames[i]);
+            names[slot] = oldNames[i];
+            used++;
+            if (inClass) {
+                classSymbols[slot] = oldClassSymbols[i];
+                classGenerations[slot] = classGeneration;
+            }
+            if (inSubroutine) {
+                subroutineSymbols[slot] = oldSubroutineSymbols[i];
+                subroutineGenerations[slot] = subroutineGeneration;
+            }
+        }
     }
 }
@@ -0,0 +1,105 @@
+package br.ufma.ecp;
+
+import java.util.concurrent.locks.LockSupport;
+
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+/**
+ * Runs a Scanner on its own thread, filling a TokenBuffer ring that the
+ * Parser drains. One producer and one consumer, synchronized only through
+ * the two volatile counters: the producer publishes how many tokens are
+ * readable and the consumer publishes which ones it no longer needs. When
+ * the ring is full the producer parks until the consumer releases slots or
+ * the pipeline is cancelled.
+ */
+class TokenPipeline implements Runnable {
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final Scanner scanner;
+    private final TokenBuffer tokens;
+    private final int capacity;
+    private final Thread thread;
+
+    private volatile int published;
+    private volatile int released;
+    private volatile boolean waiting;
+    private volatile boolean done;
+    private volatile boolean cancelled;
+    private volatile RuntimeException failure;
+
+    TokenPipeline(Scanner scanner, TokenBuffer tokens, int capacity) {
+        this.scanner = scanner;
+        this.tokens = tokens;
+        this.capacity = capacity;
+        thread = new Thread(this, "jack-scanner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int next = 0; !cancelled; next++) {
+                // never overwrite a slot the parser may still read
+                while (next - released >= capacity) {
+                    waiting = true;
+                    // checked again after waiting is visible, so a release cannot be missed
+                    if (next - released >= capacity && !cancelled) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                scanner.scanInto(tokens);
+                published = next + 1;
+                if (tokens.type(next) == TokenType.EOF) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            done = true;
+        }
+    }
+
+    /**
+     * Returns the index of the token after {@code current}, waiting for the scanner if needed.
+     * Tokens before {@code current} are handed back to the producer.
+     * Past the end of input the EOF token is returned again.
+     */
+    int next(int current) {
+        released = current < 0 ? 0 : current;
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+        int index = current + 1;
+        for (int spins = 0; index >= published; spins++) {
+            if (done && index >= published) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return published - 1;
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return index;
+    }
+
+    // stops the producer; safe to call more than once
+    void cancel() {
+        cancelled = true;
+        LockSupport.unpark(thread);
+    }
+
+    boolean isAlive() {
+        return thread.isAlive();
+    }
+}
@@ -0,0 +1,189 @@
+package br.ufma.ecp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typed in-memory form of the VM instructions of a class. Each instruction
+ * is one packed long:
+ *
+ *   op (8 bits) | segment (8 bits) | count (16 bits) | operand (32 bits)
+ *
+ * The operand is the push/pop index, or for labels, gotos, calls and
+ * functions an index into the name table; count is nArgs or nLocals.
+ * The .vm text is just one serialization of it, see {@link #writeText}.
+ */
+public class VMCode {
+
+    public enum Op {
+        PUSH, POP,
+        ADD, SUB, NEG, EQ, GT, LT, AND, OR, NOT,
+        LABEL, GOTO, IF_GOTO, CALL, FUNCTION, RETURN;
+
+        final String text = name().toLowerCase() + "\n";
+
+        public boolean isArithmetic() {
+            return ordinal() >= ADD.ordinal() && ordinal() <= NOT.ordinal();
+        }
+
+        public boolean hasName() {
+            return ordinal() >= LABEL.ordinal() && ordinal() <= FUNCTION.ordinal();
+        }
+    };
+
+    private static final Op[] OPS = Op.values();
+    private static final VMWriter.Segment[] SEGMENTS = VMWriter.Segment.values();
+
+    private long[] code = new long[256];
+    private int size;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIndex = new HashMap<>();
+
+    // count has 16 bits: a function with more locals or a call with more arguments is rejected
+    public static long encode(Op op, VMWriter.Segment segment, int count, int operand) {
+        if (count < 0 || count > 0xFFFF) {
+            throw new IllegalArgumentException("count out of range: " + count);
+        }
+        return (long) op.ordinal() << 56
+            | (long) (segment == null ? 0 : segment.ordinal()) << 48
+            | (long) count << 32
+            | (operand & 0xFFFFFFFFL);
+    }
+
+    public static Op op(long word) {
+        return OPS[(int) (word >>> 56)];
+    }
+
+    public static VMWriter.Segment segment(long word) {
+        return SEGMENTS[(int) (word >>> 48) & 0xFF];
+    }
+
+    public static int count(long word) {
+        return (int) (word >>> 32) & 0xFFFF;
+    }
+
+    public static int operand(long word) {
+        return (int) word;
+    }
+
+    public void add(long word) {
+        if (size == code.length) {
+            code = Arrays.copyOf(code, size * 2);
+        }
+        code[size++] = word;
+    }
+
+    public void add(Op op, VMWriter.Segment segment, int operand) {
+        add(encode(op, segment, 0, operand));
+    }
+
+    public void add(Op op, String name, int count) {
+        add(encode(op, null, count, name(name)));
+    }
+
+    public void add(Op op) {
+        add(encode(op, null, 0, 0));
+    }
+
+    /**
+     * Index of a label or function name in the name table, adding it if new.
+     */
+    public int name(String name) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            nameIndex.put(name, index);
+        }
+        return index;
+    }
+
+    public String nameAt(int index) {
+        return names.get(index);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long word(int i) {
+        return code[i];
+    }
+
+    public void set(int i, long word) {
+        code[i] = word;
+    }
+
+    public Op op(int i) {
+        return op(code[i]);
+    }
+
+    public VMWriter.Segment segment(int i) {
+        return segment(code[i]);
+    }
+
+    public int operand(int i) {
+        return operand(code[i]);
+    }
+
+    public int count(int i) {
+        return count(code[i]);
+    }
+
+    public String name(int i) {
+        return names.get(operand(code[i]));
+    }
+
+    // drops every instruction from index size on
+    public void truncate(int size) {
+        this.size = size;
+    }
+
+    public void clear() {
+        size = 0;
+        names.clear();
+        nameIndex.clear();
+    }
+
+    public void writeText(StringBuilder out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            long word = code[i];
+            Op op = op(word);
+            switch (op) {
+                case PUSH:
+                    out.append(segment(word).push).append(operand(word)).append('\n');
+                    break;
+                case POP:
+                    out.append(segment(word).pop).append(operand(word)).append('\n');
+                    break;
+                case LABEL:
+                    out.append("label ").append(names.get(operand(word))).append('\n');
+                    break;
+                case GOTO:
+                    out.append("goto ").append(names.get(operand(word))).append('\n');
+                    break;
+                case IF_GOTO:
+                    out.append("if-goto ").append(names.get(operand(word))).append('\n');
+                    break;
+                case CALL:
+                    out.append("call ").append(names.get(operand(word))).append(' ').append(count(word)).append('\n');
+                    break;
+                case FUNCTION:
+                    out.append("function ").append(names.get(operand(word))).append(' ').append(count(word)).append('\n');
+                    break;
+                default:
+                    // arithmetic and return
+                    out.append(op.text);
+            }
+        }
+    }
+
+    public String text() {
+        StringBuilder out = new StringBuilder(size * 12);
+        writeText(out, 0, size);
+        return out.toString();
+    }
+}
@@ -1,9 +1,24 @@
 package br.ufma.ecp;
 
-public class VMWriter {
-    private final StringBuilder vmOutput = new StringBuilder();
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.ufma.ecp.opt.Pass;
 
-    enum Segment {
+public class VMWriter {
+    private final VMCode code = new VMCode();
+    private final StringBuilder text = new StringBuilder();
+    // reused for every flush; Writer.append(CharSequence) would copy the text into a new String
+    private final char[] chunk = new char[8192];
+    private Writer out;
+    private final List<Pass> passes = new ArrayList<>();
+    private int functionStart;
+    private boolean enabled = true;
+
+    public enum Segment {
         CONST("constant"),
         ARG("argument"),
         LOCAL("local"),
@@ -15,12 +30,16 @@ public class VMWriter {
 
         private Segment(String value) {
             this.value = value;
+            push = "push " + value + " ";
+            pop = "pop " + value + " ";
         }
 
         public final String value;
+        final String push;
+        final String pop;
     };
 
-    enum Command {
+    public enum Command {
         ADD,
         SUB,
         NEG,
@@ -32,44 +51,114 @@ public class VMWriter {
         NOT
     };
 
+    private static final VMCode.Op[] COMMAND_OPS = new VMCode.Op[Command.values().length];
+
+    static {
+        for (Command command : Command.values()) {
+            COMMAND_OPS[command.ordinal()] = VMCode.Op.valueOf(command.name());
+        }
+    }
+
     public String vmOutput() {
-        return vmOutput.toString();
+        return code.text();
+    }
+
+    public VMCode code() {
+        return code;
+    }
+
+    /**
+     * Sends the code to {@code out} on every {@link #flush()} instead of keeping
+     * the whole class; vmOutput() then only holds what was not flushed yet.
+     */
+    void setOutput(Writer out) {
+        this.out = out;
+    }
+
+    // run in order over each function when it is flushed
+    void addPass(Pass pass) {
+        passes.add(pass);
+    }
+
+    /**
+     * Ends the current function: runs the passes over it, then writes the
+     * recorded instructions to the output, if any, and forgets them.
+     */
+    void flush() {
+        for (Pass pass : passes) {
+            pass.run(code, functionStart);
+        }
+        functionStart = code.size();
+        if (out == null) return;
+
+        text.setLength(0);
+        code.writeText(text, 0, code.size());
+        try {
+            for (int from = 0; from < text.length(); from += chunk.length) {
+                int to = Math.min(text.length(), from + chunk.length);
+                text.getChars(from, to, chunk, 0);
+                out.write(chunk, 0, to - from);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        code.clear();
+        functionStart = 0;
+    }
+
+    // drops the recorded code and the output, keeping the storage
+    void reset() {
+        code.clear();
+        functionStart = 0;
+        out = null;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
     }
 
     void writePush(Segment segment, int index) {
-        vmOutput.append(String.format("push %s %d\n", segment.value, index));
+        if (!enabled) return;
+        code.add(VMCode.Op.PUSH, segment, index);
     }
 
     void writePop(Segment segment, int index) {
-
-        vmOutput.append(String.format("pop %s %d\n", segment.value, index));
+        if (!enabled) return;
+        code.add(VMCode.Op.POP, segment, index);
     }
 
     void writeArithmetic(Command command) {
-        vmOutput.append(String.format("%s\n", command.name().toLowerCase()));
+        if (!enabled) return;
+        code.add(COMMAND_OPS[command.ordinal()]);
     }
 
     void writeLabel(String label) {
-        vmOutput.append(String.format("label %s\n", label));
+        if (!enabled) return;
+        code.add(VMCode.Op.LABEL, label, 0);
     }
 
     void writeGoto(String label) {
-        vmOutput.append(String.format("goto %s\n", label));
+        if (!enabled) return;
+        code.add(VMCode.Op.GOTO, label, 0);
     }
 
     void writeIf(String label) {
-        vmOutput.append(String.format("if-goto %s\n", label));
+        if (!enabled) return;
+        code.add(VMCode.Op.IF_GOTO, label, 0);
     }
 
     void writeCall(String name, int nArgs) {
-        vmOutput.append(String.format("call %s %d\n", name, nArgs));
+        if (!enabled) return;
+        code.add(VMCode.Op.CALL, name, nArgs);
     }
 
     void writeFunction(String name, int nLocals) {
-        vmOutput.append(String.format("function %s %d\n", name, nLocals));
+        if (!enabled) return;
+        code.add(VMCode.Op.FUNCTION, name, nLocals);
     }
 
     void writeReturn() {
-        vmOutput.append("return\n");
+        if (!enabled) return;
+        code.add(VMCode.Op.RETURN);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package br.ufma.ecp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ByteSearch over whole vector lanes (32 or 64 bytes on current hardware).
+ * Only loaded by ByteSearch.get() when jdk.incubator.vector is present;
+ * remainders shorter than a lane go through the scalar loops.
+ */
+final class VectorByteSearch extends ByteSearch {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+    VectorByteSearch() {
+        // fail here, not in the middle of a scan, if this JDK's vector API does not link
+        ByteBuffer probe = ByteBuffer.allocate(SPECIES.length() * 2);
+        probe.put(SPECIES.length() + 1, (byte) '*');
+        if (skipBlanks(probe, 0, probe.capacity()) != 0
+                || indexOf(probe, 1, probe.capacity(), (byte) '*', (byte) '/') != SPECIES.length() + 1
+                || count(probe, 0, probe.capacity(), (byte) '*') != 1) {
+            throw new IllegalStateException("vector search self-check failed");
+        }
+    }
+
+    // heap buffers load straight from the array, which C2 intrinsifies far better
+    private static ByteVector load(ByteBuffer buf, int i) {
+        if (buf.hasArray()) {
+            return ByteVector.fromArray(SPECIES, buf.array(), buf.arrayOffset() + i);
+        }
+        return ByteVector.fromByteBuffer(SPECIES, buf, i, ORDER);
+    }
+
+    @Override
+    int skipBlanks(ByteBuffer buf, int from, int to) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            ByteVector v = load(buf, i);
+            VectorMask<Byte> blank = v.eq((byte) ' ').or(v.eq((byte) '\n')).or(v.eq((byte) '\t')).or(v.eq((byte) '\r'));
+            if (!blank.allTrue()) {
+                return i + blank.not().firstTrue();
+            }
+        }
+        return super.skipBlanks(buf, i, to);
+    }
+
+    @Override
+    int indexOf(ByteBuffer buf, int from, int to, byte a, byte b) {
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            ByteVector v = load(buf, i);
+            VectorMask<Byte> hit = v.eq(a).or(v.eq(b));
+            if (hit.anyTrue()) {
+                return i + hit.firstTrue();
+            }
+        }
+        return super.indexOf(buf, i, to, a, b);
+    }
+
+    @Override
+    int count(ByteBuffer buf, int from, int to, byte b) {
+        int n = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            n += load(buf, i).eq(b).trueCount();
+        }
+        return n + super.count(buf, i, to, b);
+    }
+}
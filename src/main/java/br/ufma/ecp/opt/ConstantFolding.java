@@ -0,0 +1,114 @@
+package br.ufma.ecp.opt;
+
+import java.util.Arrays;
+
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+/**
+ * Evaluates operations whose operands are constants at compile time, with the
+ * 16-bit two's complement wraparound of the Hack VM. Covers the arithmetic,
+ * logic and comparison commands and calls to Math.multiply and Math.divide;
+ * division by zero is left for the runtime to report.
+ *
+ * A constant is a {@code push constant} optionally followed by neg or not.
+ * Results are pushed the same way: n &gt;= 0 as {@code push constant n}, and
+ * negative n as {@code push constant ~n; not}, so true is {@code push constant 0; not}.
+ */
+public class ConstantFolding implements Pass {
+    private long[] out = new long[64];
+    private int size;
+    private int folded;
+
+    @Override
+    public String name() {
+        return "constant-folding";
+    }
+
+    // operations folded so far
+    public int folded() {
+        return folded;
+    }
+
+    @Override
+    public void run(VMCode code, int from) {
+        size = 0;
+        for (int i = from, end = code.size(); i < end; i++) {
+            long word = code.word(i);
+            switch (VMCode.op(word)) {
+                case ADD, SUB, AND, OR, EQ, GT, LT -> binary(word, false);
+                case NEG, NOT -> unary(word);
+                case CALL -> {
+                    String name = code.nameAt(VMCode.operand(word));
+                    if (VMCode.count(word) == 2 && (name.equals("Math.multiply") || name.equals("Math.divide"))) {
+                        binary(word, name.equals("Math.divide"));
+                    } else {
+                        emit(word);
+                    }
+                }
+                default -> emit(word);
+            }
+        }
+
+        code.truncate(from);
+        for (int i = 0; i < size; i++) {
+            code.add(out[i]);
+        }
+    }
+
+    private void binary(long word, boolean divide) {
+        long right = Instructions.constant(out, size);
+        long left = right == 0 ? 0 : Instructions.constant(out, size - Instructions.length(right));
+        int a = Instructions.value(left);
+        int b = Instructions.value(right);
+        if (left == 0 || (divide && b == 0)) {
+            emit(word);
+            return;
+        }
+
+        int result = switch (VMCode.op(word)) {
+            case ADD -> a + b;
+            case SUB -> a - b;
+            case AND -> a & b;
+            case OR -> a | b;
+            case EQ -> a == b ? -1 : 0;
+            case GT -> a > b ? -1 : 0;
+            case LT -> a < b ? -1 : 0;
+            default -> divide ? a / b : a * b;
+        };
+
+        size -= Instructions.length(left) + Instructions.length(right);
+        push((short) result);
+        folded++;
+    }
+
+    private void unary(long word) {
+        // a lone push followed by neg or not already is the shortest form
+        long operand = Instructions.constant(out, size);
+        if (Instructions.length(operand) != 2) {
+            emit(word);
+            return;
+        }
+        int value = Instructions.value(operand);
+        int result = VMCode.op(word) == VMCode.Op.NEG ? -value : ~value;
+        size -= 2;
+        push((short) result);
+        folded++;
+    }
+
+    private void push(short n) {
+        if (n >= 0) {
+            emit(VMCode.encode(VMCode.Op.PUSH, VMWriter.Segment.CONST, 0, n));
+        } else {
+            emit(VMCode.encode(VMCode.Op.PUSH, VMWriter.Segment.CONST, 0, ~n));
+            emit(VMCode.encode(VMCode.Op.NOT, null, 0, 0));
+        }
+    }
+
+    private void emit(long word) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, size * 2);
+        }
+        out[size++] = word;
+    }
+}
@@ -0,0 +1,167 @@
+package br.ufma.ecp.opt;
+
+import java.util.Arrays;
+
+import br.ufma.ecp.VMCode;
+
+/**
+ * Removes the code of a function that can never run. Branches on a constant
+ * condition become a goto or nothing, then everything not reachable from the
+ * function's entry through gotos, if-gotos and fall-through is dropped: code
+ * after a return or a goto, and the blocks of if and while statements whose
+ * condition is constant. Gotos to the label right after them and labels
+ * nothing jumps to go as well, repeated until nothing changes.
+ */
+public class DeadCodeElimination implements Pass {
+
+    private long[] in = new long[64];
+    private long[] out = new long[64];
+    private int length;
+    private int size;
+    private boolean[] live = new boolean[64];
+    private int[] work = new int[64];
+    private int removed;
+
+    @Override
+    public String name() {
+        return "dead-code";
+    }
+
+    // instructions removed so far
+    public int removed() {
+        return removed;
+    }
+
+    @Override
+    public void run(VMCode code, int from) {
+        length = code.size() - from;
+        if (in.length < length) {
+            in = new long[length];
+        }
+        for (int i = 0; i < length; i++) {
+            in[i] = code.word(from + i);
+        }
+        int before = length;
+
+        boolean changed;
+        do {
+            changed = foldBranches();
+            changed |= dropUnreachable();
+            changed |= dropJumpsToNext();
+            int kept = Instructions.dropUnusedLabels(in, length);
+            changed |= kept != length;
+            length = kept;
+        } while (changed);
+        removed += before - length;
+
+        code.truncate(from);
+        for (int i = 0; i < length; i++) {
+            code.add(in[i]);
+        }
+    }
+
+    // constant; if-goto L  =>  goto L, or nothing when the constant is false
+    private boolean foldBranches() {
+        boolean changed = false;
+        size = 0;
+        for (int i = 0; i < length; i++) {
+            emit(in[i]);
+            if (VMCode.op(in[i]) != VMCode.Op.IF_GOTO) continue;
+
+            long constant = Instructions.condition(out, size - 1);
+            if (constant == 0) continue;
+
+            size -= 1 + Instructions.length(constant);
+            if (Instructions.value(constant) != 0) {
+                emit(VMCode.encode(VMCode.Op.GOTO, null, 0, VMCode.operand(in[i])));
+            }
+            changed = true;
+        }
+        swap();
+        return changed;
+    }
+
+    // keeps what fall-through and jumps reach from the entry
+    private boolean dropUnreachable() {
+        int names = 0;
+        for (int i = 0; i < length; i++) {
+            if (VMCode.op(in[i]).hasName()) {
+                names = Math.max(names, VMCode.operand(in[i]) + 1);
+            }
+        }
+        int[] labels = new int[names];
+        Arrays.fill(labels, -1);
+        for (int i = 0; i < length; i++) {
+            if (VMCode.op(in[i]) == VMCode.Op.LABEL) {
+                labels[VMCode.operand(in[i])] = i;
+            }
+        }
+
+        if (live.length < length) {
+            live = new boolean[length];
+        }
+        // every instruction is walked once and queues at most one target, plus the entry
+        if (work.length <= length) {
+            work = new int[length + 1];
+        }
+        Arrays.fill(live, 0, length, false);
+        int pending = 0;
+        work[pending++] = 0;
+        while (pending > 0) {
+            for (int i = work[--pending]; i < length && !live[i]; i++) {
+                live[i] = true;
+                VMCode.Op op = VMCode.op(in[i]);
+                if (op == VMCode.Op.GOTO || op == VMCode.Op.IF_GOTO) {
+                    int target = labels[VMCode.operand(in[i])];
+                    if (target < 0) {
+                        // a jump out of the function; leave it all to the VM
+                        return false;
+                    }
+                    if (!live[target]) {
+                        work[pending++] = target;
+                    }
+                }
+                if (op == VMCode.Op.GOTO || op == VMCode.Op.RETURN) break;
+            }
+        }
+
+        size = 0;
+        for (int i = 0; i < length; i++) {
+            if (live[i]) {
+                emit(in[i]);
+            }
+        }
+        boolean changed = size != length;
+        swap();
+        return changed;
+    }
+
+    // goto L; label L  =>  label L
+    private boolean dropJumpsToNext() {
+        boolean changed = false;
+        size = 0;
+        for (int i = 0; i < length; i++) {
+            if (i + 1 < length && Instructions.isGotoNext(in[i], in[i + 1])) {
+                changed = true;
+                continue;
+            }
+            emit(in[i]);
+        }
+        swap();
+        return changed;
+    }
+
+    private void swap() {
+        long[] swap = in;
+        in = out;
+        out = swap;
+        length = size;
+    }
+
+    private void emit(long word) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, size * 2);
+        }
+        out[size++] = word;
+    }
+}
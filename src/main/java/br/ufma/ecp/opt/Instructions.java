@@ -0,0 +1,137 @@
+package br.ufma.ecp.opt;
+
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+// shapes of instruction sequences the passes look for
+final class Instructions {
+
+    private Instructions() {
+    }
+
+    static boolean isPushConstant(long word) {
+        return VMCode.op(word) == VMCode.Op.PUSH && VMCode.segment(word) == VMWriter.Segment.CONST;
+    }
+
+    /**
+     * The constant pushed by the instructions ending just before end: a push
+     * constant, optionally followed by neg or not. Returns its length in the
+     * high word and its 16-bit value in the low word, or 0 if there is none.
+     */
+    static long constant(long[] code, int end) {
+        if (end >= 1 && isPushConstant(code[end - 1])) {
+            return 1L << 32 | (VMCode.operand(code[end - 1]) & 0xFFFFFFFFL);
+        }
+        if (end >= 2 && isPushConstant(code[end - 2])) {
+            int c = VMCode.operand(code[end - 2]);
+            return switch (VMCode.op(code[end - 1])) {
+                case NEG -> 2L << 32 | ((short) -c & 0xFFFFFFFFL);
+                case NOT -> 2L << 32 | ((short) ~c & 0xFFFFFFFFL);
+                default -> 0;
+            };
+        }
+        return 0;
+    }
+
+    /**
+     * Like {@link #constant}, but for the condition of a branch: a push
+     * constant followed by any number of neg and not, as the parser emits
+     * for conditions such as ~(~true).
+     */
+    static long condition(long[] code, int end) {
+        int start = end - 1;
+        while (start >= 0 && (VMCode.op(code[start]) == VMCode.Op.NEG || VMCode.op(code[start]) == VMCode.Op.NOT)) {
+            start--;
+        }
+        if (start < 0 || !isPushConstant(code[start])) return 0;
+
+        int value = VMCode.operand(code[start]);
+        for (int i = start + 1; i < end; i++) {
+            value = VMCode.op(code[i]) == VMCode.Op.NEG ? (short) -value : (short) ~value;
+        }
+        return (long) (end - start) << 32 | (value & 0xFFFFFFFFL);
+    }
+
+    // goto L right before label L
+    static boolean isGotoNext(long jump, long label) {
+        return VMCode.op(jump) == VMCode.Op.GOTO && VMCode.op(label) == VMCode.Op.LABEL
+            && VMCode.operand(jump) == VMCode.operand(label);
+    }
+
+    static int length(long constant) {
+        return (int) (constant >>> 32);
+    }
+
+    static int value(long constant) {
+        return (int) constant;
+    }
+
+    /**
+     * Start of the shortest run of instructions ending just before end that
+     * leaves exactly one more word on the stack without touching what was
+     * below it, or -1 if control flow comes first. Anything before that start
+     * still runs, so leaving it in place is always safe.
+     */
+    static int expressionStart(long[] code, int end) {
+        int need = 0;
+        int net = 0;
+        for (int i = end - 1; i >= 0; i--) {
+            long word = code[i];
+            int pops;
+            int pushes;
+            switch (VMCode.op(word)) {
+                case PUSH -> { pops = 0; pushes = 1; }
+                case POP -> { pops = 1; pushes = 0; }
+                case NEG, NOT -> { pops = 1; pushes = 1; }
+                case ADD, SUB, EQ, GT, LT, AND, OR -> { pops = 2; pushes = 1; }
+                case CALL -> { pops = VMCode.count(word); pushes = 1; }
+                default -> {
+                    return -1;
+                }
+            }
+            need = pops + Math.max(0, need - pushes);
+            net += pushes - pops;
+            if (need == 0 && net == 1) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // only pushes and arithmetic: dropping it changes nothing but the stack
+    static boolean isPure(long[] code, int from, int to) {
+        for (int i = from; i < to; i++) {
+            VMCode.Op op = VMCode.op(code[i]);
+            if (op != VMCode.Op.PUSH && !op.isArithmetic()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // removes the labels no goto or if-goto names; returns the new size
+    static int dropUnusedLabels(long[] code, int size) {
+        int names = 0;
+        for (int i = 0; i < size; i++) {
+            if (VMCode.op(code[i]).hasName()) {
+                names = Math.max(names, VMCode.operand(code[i]) + 1);
+            }
+        }
+        boolean[] referenced = new boolean[names];
+        for (int i = 0; i < size; i++) {
+            VMCode.Op op = VMCode.op(code[i]);
+            if (op == VMCode.Op.GOTO || op == VMCode.Op.IF_GOTO) {
+                referenced[VMCode.operand(code[i])] = true;
+            }
+        }
+
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (VMCode.op(code[i]) == VMCode.Op.LABEL && !referenced[VMCode.operand(code[i])]) {
+                continue;
+            }
+            code[kept++] = code[i];
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,16 @@
+package br.ufma.ecp.opt;
+
+import br.ufma.ecp.VMCode;
+
+/**
+ * An optimization over the VM code of one function. {@link #run} is called
+ * once the function is complete, with the function being the instructions
+ * from {@code from} to the end of the code; a pass may rewrite or drop any
+ * of them but must not touch earlier ones.
+ */
+public interface Pass {
+
+    String name();
+
+    void run(VMCode code, int from);
+}
@@ -0,0 +1,106 @@
+package br.ufma.ecp.opt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.List;
+
+import br.ufma.ecp.VMCode;
+
+/**
+ * Runs an ordered list of passes over each function and keeps, per pass,
+ * the time spent and how many instructions it added or removed. Passes can
+ * be switched off by name, and {@link #level} builds the -O presets:
+ *
+ *   0  no passes, the code exactly as the parser emits it
+ *   1  constant-folding, peephole, dead-code: never larger or slower
+ *   2  level 1 with strength-reduction before peephole, trading size for
+ *      fewer executed instructions
+ */
+public class PassManager implements Pass {
+
+    private final List<Pass> passes = new ArrayList<>();
+    private final List<Boolean> enabled = new ArrayList<>();
+    private long[] nanos = new long[0];
+    private long[] delta = new long[0];
+    private int functions;
+
+    public static PassManager level(int level) {
+        var manager = new PassManager();
+        if (level >= 1) {
+            manager.add(new ConstantFolding());
+            if (level >= 2) {
+                manager.add(new StrengthReduction());
+            }
+            manager.add(new Peephole());
+            manager.add(new DeadCodeElimination());
+        }
+        return manager;
+    }
+
+    public PassManager add(Pass pass) {
+        passes.add(pass);
+        enabled.add(true);
+        nanos = Arrays.copyOf(nanos, passes.size());
+        delta = Arrays.copyOf(delta, passes.size());
+        return this;
+    }
+
+    public List<Pass> passes() {
+        return passes;
+    }
+
+    /**
+     * Switches the passes with the given name on or off; returns false if
+     * there is none.
+     */
+    public boolean setEnabled(String name, boolean on) {
+        boolean found = false;
+        for (int i = 0; i < passes.size(); i++) {
+            if (passes.get(i).name().equals(name)) {
+                enabled.set(i, on);
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public String name() {
+        return "passes";
+    }
+
+    @Override
+    public void run(VMCode code, int from) {
+        functions++;
+        for (int i = 0; i < passes.size(); i++) {
+            if (!enabled.get(i)) continue;
+            int before = code.size();
+            long start = System.nanoTime();
+            passes.get(i).run(code, from);
+            nanos[i] += System.nanoTime() - start;
+            delta[i] += code.size() - before;
+        }
+    }
+
+    // total time spent in the pass so far
+    public long nanos(Pass pass) {
+        return nanos[passes.indexOf(pass)];
+    }
+
+    // instructions the pass added so far, negative when it removed more
+    public long delta(Pass pass) {
+        return delta[passes.indexOf(pass)];
+    }
+
+    // one line per pass: time and instruction delta
+    public String report() {
+        var report = new Formatter();
+        report.format("%d functions%n", functions);
+        for (int i = 0; i < passes.size(); i++) {
+            report.format("%-20s %10.3f ms %+8d instructions%s%n", passes.get(i).name(),
+                nanos[i] / 1e6, delta[i], enabled.get(i) ? "" : "  (off)");
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,214 @@
+package br.ufma.ecp.opt;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+/**
+ * Rewrites short instruction sequences the parser is known to emit
+ * wastefully. Patterns are matched at the end of the output as each
+ * instruction is appended, so a rewrite can enable the next one, and the
+ * whole function is repeated until nothing changes.
+ */
+public class Peephole implements Pass {
+
+    public enum Pattern {
+        // if-goto A; goto B; label A  =>  not; if-goto B; label A
+        IF_BRANCH,
+        // value; pop temp 0; pop pointer 1; push temp 0; pop that 0  =>  pop pointer 1; value; pop that 0
+        // when value only reads locals, arguments, statics, this or constants
+        ARRAY_STORE,
+        // not; not  =>  nothing
+        NOT_NOT,
+        // constant; if-goto L  =>  goto L, or nothing when the constant is false
+        CONSTANT_BRANCH,
+        // goto L; label L  =>  label L
+        GOTO_NEXT,
+        // label L  =>  nothing, when no goto or if-goto of the function names L
+        UNUSED_LABEL
+    };
+
+    private static final long NOT = VMCode.encode(VMCode.Op.NOT, null, 0, 0);
+
+    private final Set<Pattern> enabled;
+    private final int[] hits = new int[Pattern.values().length];
+    private long[] out = new long[64];
+    private int size;
+    private boolean changed;
+
+    public Peephole() {
+        this(EnumSet.allOf(Pattern.class));
+    }
+
+    public Peephole(Set<Pattern> enabled) {
+        this.enabled = EnumSet.copyOf(enabled);
+    }
+
+    @Override
+    public String name() {
+        return "peephole";
+    }
+
+    // times the pattern was rewritten so far
+    public int hits(Pattern pattern) {
+        return hits[pattern.ordinal()];
+    }
+
+    @Override
+    public void run(VMCode code, int from) {
+        long[] in = new long[code.size() - from];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = code.word(from + i);
+        }
+        int length = in.length;
+
+        do {
+            changed = false;
+            size = 0;
+            for (int i = 0; i < length; i++) {
+                append(in[i]);
+            }
+            if (enabled.contains(Pattern.UNUSED_LABEL)) {
+                dropUnusedLabels();
+            }
+            long[] swap = in;
+            in = out;
+            out = swap;
+            length = size;
+        } while (changed);
+
+        code.truncate(from);
+        for (int i = 0; i < length; i++) {
+            code.add(in[i]);
+        }
+    }
+
+    private void append(long word) {
+        emit(word);
+        switch (VMCode.op(word)) {
+            case NOT -> {
+                if (enabled.contains(Pattern.NOT_NOT) && size >= 2 && out[size - 2] == NOT) {
+                    size -= 2;
+                    hit(Pattern.NOT_NOT);
+                }
+            }
+            case IF_GOTO -> {
+                if (enabled.contains(Pattern.CONSTANT_BRANCH)) {
+                    constantBranch(word);
+                }
+            }
+            case LABEL -> {
+                if (enabled.contains(Pattern.GOTO_NEXT) && size >= 2 && Instructions.isGotoNext(out[size - 2], word)) {
+                    out[size - 2] = word;
+                    size--;
+                    hit(Pattern.GOTO_NEXT);
+                } else if (enabled.contains(Pattern.IF_BRANCH) && size >= 3
+                        && isJump(out[size - 3], VMCode.Op.IF_GOTO, word) && VMCode.op(out[size - 2]) == VMCode.Op.GOTO) {
+                    long target = out[size - 2];
+                    size -= 3;
+                    hit(Pattern.IF_BRANCH);
+                    append(NOT);
+                    append(VMCode.encode(VMCode.Op.IF_GOTO, null, 0, VMCode.operand(target)));
+                    append(word);
+                }
+            }
+            case POP -> {
+                if (enabled.contains(Pattern.ARRAY_STORE) && isSegment(word, VMWriter.Segment.THAT, 0)) {
+                    arrayStore();
+                }
+            }
+            default -> { }
+        }
+    }
+
+    // the if-goto just emitted, after a constant
+    private void constantBranch(long word) {
+        int end = size - 1;
+        long constant = Instructions.condition(out, end);
+        if (constant == 0) {
+            return;
+        }
+
+        size = end - Instructions.length(constant);
+        if (Instructions.value(constant) != 0) {
+            emit(VMCode.encode(VMCode.Op.GOTO, null, 0, VMCode.operand(word)));
+        }
+        hit(Pattern.CONSTANT_BRANCH);
+    }
+
+    // the pop that 0 just emitted ends an array store; pop temp 0 is at t
+    private void arrayStore() {
+        int t = size - 4;
+        if (t < 1 || !isSegment(out[t], VMWriter.Segment.TEMP, 0) || !isPop(out[t])
+                || !isSegment(out[t + 1], VMWriter.Segment.POINTER, 1) || !isPop(out[t + 1])
+                || !isSegment(out[t + 2], VMWriter.Segment.TEMP, 0) || isPop(out[t + 2])) {
+            return;
+        }
+
+        // walk back over the value until it has pushed exactly one word
+        int depth = 0;
+        int start = t;
+        while (depth != 1) {
+            if (--start < 0) return;
+            long word = out[start];
+            VMCode.Op op = VMCode.op(word);
+            if (op == VMCode.Op.PUSH) {
+                VMWriter.Segment segment = VMCode.segment(word);
+                if (segment == VMWriter.Segment.THAT || (segment == VMWriter.Segment.POINTER && VMCode.operand(word) == 1)) {
+                    return;
+                }
+                depth++;
+            } else if (op == VMCode.Op.NEG || op == VMCode.Op.NOT) {
+                // one in, one out
+            } else if (op.isArithmetic()) {
+                depth--;
+            } else {
+                return;
+            }
+        }
+
+        long popPointer = out[t + 1];
+        long popThat = out[t + 3];
+        System.arraycopy(out, start, out, start + 1, t - start);
+        out[start] = popPointer;
+        out[t + 1] = popThat;
+        size = t + 2;
+        hit(Pattern.ARRAY_STORE);
+    }
+
+    private void dropUnusedLabels() {
+        int kept = Instructions.dropUnusedLabels(out, size);
+        for (; size > kept; size--) {
+            hit(Pattern.UNUSED_LABEL);
+        }
+    }
+
+    private void hit(Pattern pattern) {
+        hits[pattern.ordinal()]++;
+        changed = true;
+    }
+
+    private static boolean isJump(long jump, VMCode.Op op, long label) {
+        return VMCode.op(jump) == op && VMCode.operand(jump) == VMCode.operand(label);
+    }
+
+    private static boolean isPop(long word) {
+        return VMCode.op(word) == VMCode.Op.POP;
+    }
+
+    private static boolean isSegment(long word, VMWriter.Segment segment, int index) {
+        VMCode.Op op = VMCode.op(word);
+        return (op == VMCode.Op.PUSH || op == VMCode.Op.POP)
+            && VMCode.segment(word) == segment && VMCode.operand(word) == index;
+    }
+
+    private void emit(long word) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, size * 2);
+        }
+        out[size++] = word;
+    }
+}
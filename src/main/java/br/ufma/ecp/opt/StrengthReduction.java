@@ -0,0 +1,164 @@
+package br.ufma.ecp.opt;
+
+import java.util.Arrays;
+
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+/**
+ * Replaces calls to Math.multiply by a constant with adds, and drops
+ * operations that leave their operand unchanged: x*1, x+0, x-0, x&amp;-1,
+ * x|0 and x/1 (either side for the commutative ones). x*0 becomes 0,
+ * still evaluating x if it has side effects.
+ *
+ * There are no shifts in the VM, so x*c keeps a running power of two of x
+ * in temp 1 and doubles it with an add, summing the powers for the set bits
+ * of c on the stack; x*2 of a plain push is just the push twice and an add.
+ * Division is only simplified for /1: rounding of signed division by other
+ * constants depends on Math.divide, so it stays a call.
+ */
+public class StrengthReduction implements Pass {
+    // a multiplier with more set bits costs more adds than it is worth
+    private static final int MAX_BITS = 3;
+
+    private static final long ADD = VMCode.encode(VMCode.Op.ADD, null, 0, 0);
+    private static final long NEG = VMCode.encode(VMCode.Op.NEG, null, 0, 0);
+    private static final long POP_TEMP = VMCode.encode(VMCode.Op.POP, VMWriter.Segment.TEMP, 0, 1);
+    private static final long PUSH_TEMP = VMCode.encode(VMCode.Op.PUSH, VMWriter.Segment.TEMP, 0, 1);
+
+    private long[] out = new long[64];
+    private int size;
+    private int reduced;
+
+    @Override
+    public String name() {
+        return "strength-reduction";
+    }
+
+    // operations replaced or dropped so far
+    public int reduced() {
+        return reduced;
+    }
+
+    @Override
+    public void run(VMCode code, int from) {
+        size = 0;
+        for (int i = from, end = code.size(); i < end; i++) {
+            long word = code.word(i);
+            boolean done = switch (VMCode.op(word)) {
+                case ADD, OR -> identity(0, true);
+                case SUB -> identity(0, false);
+                case AND -> identity(-1, true);
+                case CALL -> {
+                    String name = code.nameAt(VMCode.operand(word));
+                    if (VMCode.count(word) != 2) yield false;
+                    if (name.equals("Math.multiply")) yield multiply();
+                    if (name.equals("Math.divide")) yield identity(1, false);
+                    yield false;
+                }
+                default -> false;
+            };
+            if (done) {
+                reduced++;
+            } else {
+                emit(word);
+            }
+        }
+
+        code.truncate(from);
+        for (int i = 0; i < size; i++) {
+            code.add(out[i]);
+        }
+    }
+
+    // x op neutral, or neutral op x when the operation commutes, is just x
+    private boolean identity(int neutral, boolean commutes) {
+        long right = Instructions.constant(out, size);
+        if (right != 0 && Instructions.value(right) == neutral) {
+            size -= Instructions.length(right);
+            return true;
+        }
+        if (!commutes) {
+            return false;
+        }
+        int start = Instructions.expressionStart(out, size);
+        long left = start < 0 ? 0 : Instructions.constant(out, start);
+        if (left != 0 && Instructions.value(left) == neutral) {
+            remove(start - Instructions.length(left), start);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean multiply() {
+        long right = Instructions.constant(out, size);
+        if (right != 0) {
+            if (!reducible(Instructions.value(right))) return false;
+            size -= Instructions.length(right);
+            times(Instructions.value(right));
+            return true;
+        }
+
+        int start = Instructions.expressionStart(out, size);
+        long left = start < 0 ? 0 : Instructions.constant(out, start);
+        if (left == 0 || !reducible(Instructions.value(left))) return false;
+        remove(start - Instructions.length(left), start);
+        times(Instructions.value(left));
+        return true;
+    }
+
+    private static boolean reducible(int c) {
+        return c != Short.MIN_VALUE && Integer.bitCount(Math.abs(c)) <= MAX_BITS;
+    }
+
+    // multiplies the value on top of the output by c
+    private void times(int c) {
+        int start = Instructions.expressionStart(out, size);
+        if (c == 0) {
+            if (start >= 0 && Instructions.isPure(out, start, size)) {
+                size = start;
+            } else {
+                emit(POP_TEMP);
+            }
+            emit(VMCode.encode(VMCode.Op.PUSH, VMWriter.Segment.CONST, 0, 0));
+            return;
+        }
+
+        int n = Math.abs(c);
+        if (n == 2 && start == size - 1) {
+            emit(out[start]);
+            emit(ADD);
+        } else if (n != 1) {
+            emit(POP_TEMP);
+            boolean first = true;
+            for (int bit = 0; n >> bit != 0; bit++) {
+                if ((n >> bit & 1) != 0) {
+                    emit(PUSH_TEMP);
+                    if (!first) emit(ADD);
+                    first = false;
+                }
+                if (n >> (bit + 1) != 0) {
+                    emit(PUSH_TEMP);
+                    emit(PUSH_TEMP);
+                    emit(ADD);
+                    emit(POP_TEMP);
+                }
+            }
+        }
+        if (c < 0) {
+            emit(NEG);
+        }
+    }
+
+    private void remove(int from, int to) {
+        System.arraycopy(out, to, out, from, size - to);
+        size -= to - from;
+    }
+
+    private void emit(long word) {
+        if (size == out.length) {
+            out = Arrays.copyOf(out, size * 2);
+        }
+        out[size++] = word;
+    }
+}
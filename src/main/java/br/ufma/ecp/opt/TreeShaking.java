@@ -0,0 +1,113 @@
+package br.ufma.ecp.opt;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import br.ufma.ecp.VMCode;
+
+/**
+ * Whole-program removal of the functions nothing calls. The call graph is
+ * read off the call instructions of the compiled classes: a method or
+ * constructor call through a variable is already emitted as a call to the
+ * declared type of the variable, so every edge names the one function it
+ * can reach. Everything reachable from Main.main is kept.
+ *
+ * When in doubt everything stays: all functions, if there is no Main.main,
+ * and all functions of a class, if a call names a function of it that was
+ * not compiled.
+ */
+public class TreeShaking {
+    public static final String ENTRY = "Main.main";
+
+    private record Function(VMCode code, int from, int to) {}
+
+    private final Map<String, Function> functions = new LinkedHashMap<>();
+    private final Map<String, List<String>> classes = new HashMap<>();
+    private Set<String> reachable;
+
+    public void add(VMCode code) {
+        int start = -1;
+        for (int i = 0; i <= code.size(); i++) {
+            if (i < code.size() && code.op(i) != VMCode.Op.FUNCTION) continue;
+            if (start >= 0) {
+                var name = code.name(start);
+                functions.put(name, new Function(code, start, i));
+                classes.computeIfAbsent(className(name), c -> new ArrayList<>()).add(name);
+            }
+            start = i;
+        }
+        reachable = null;
+    }
+
+    public Set<String> reachable() {
+        if (reachable != null) return reachable;
+
+        reachable = new HashSet<>();
+        if (!functions.containsKey(ENTRY)) {
+            reachable.addAll(functions.keySet());
+            return reachable;
+        }
+
+        var pending = new ArrayDeque<String>();
+        reachable.add(ENTRY);
+        pending.add(ENTRY);
+        while (!pending.isEmpty()) {
+            var function = functions.get(pending.poll());
+            for (int i = function.from(); i < function.to(); i++) {
+                if (function.code().op(i) != VMCode.Op.CALL) continue;
+                var callee = function.code().name(i);
+                if (functions.containsKey(callee)) {
+                    if (reachable.add(callee)) pending.add(callee);
+                } else {
+                    // OS classes are not compiled; anything else keeps its whole class
+                    for (var name : classes.getOrDefault(className(callee), List.of())) {
+                        if (reachable.add(name)) pending.add(name);
+                    }
+                }
+            }
+        }
+        return reachable;
+    }
+
+    // the functions of the program nothing reaches, in the order they were added
+    public List<String> removed() {
+        List<String> removed = new ArrayList<>();
+        for (var name : functions.keySet()) {
+            if (!reachable().contains(name)) removed.add(name);
+        }
+        return removed;
+    }
+
+    // instructions of the removed functions
+    public int removedSize() {
+        int size = 0;
+        for (var name : removed()) {
+            var function = functions.get(name);
+            size += function.to() - function.from();
+        }
+        return size;
+    }
+
+    // the VM text of the reachable functions of code, which must have been added
+    public String text(VMCode code) {
+        var out = new StringBuilder();
+        for (var entry : functions.entrySet()) {
+            var function = entry.getValue();
+            if (function.code() == code && reachable().contains(entry.getKey())) {
+                code.writeText(out, function.from(), function.to());
+            }
+        }
+        return out.toString();
+    }
+
+    private static String className(String function) {
+        int dot = function.indexOf('.');
+        return dot < 0 ? function : function.substring(0, dot);
+    }
+}
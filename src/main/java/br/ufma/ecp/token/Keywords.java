@@ -0,0 +1,70 @@
+package br.ufma.ecp.token;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Keyword recognition straight over a byte slice, without building a String.
+ * Uses a perfect hash over (length, first byte, last byte) of the 21 keywords.
+ */
+public final class Keywords {
+    private static final int SIZE = 64;
+    private static final TokenType[] types = new TokenType[SIZE];
+    private static final byte[][] texts = new byte[SIZE][];
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            if (TokenType.isKeyword(type)) {
+                byte[] text = type.toString().toLowerCase().getBytes();
+                int h = hash(text.length, text[0], text[text.length - 1]);
+                if (types[h] != null) {
+                    throw new IllegalStateException("keyword hash collision: " + type + " and " + types[h]);
+                }
+                types[h] = type;
+                texts[h] = text;
+            }
+        }
+    }
+
+    private Keywords() {}
+
+    private static int hash(int length, byte first, byte last) {
+        return ((length << 2) + first + (last << 3)) & (SIZE - 1);
+    }
+
+    /**
+     * Returns the keyword spelled by input[start, start + length), or null if it is not one.
+     */
+    public static TokenType lookup(byte[] input, int start, int length) {
+        if (length < 2 || length > 11) {
+            return null;
+        }
+        int h = hash(length, input[start], input[start + length - 1]);
+        byte[] text = texts[h];
+        if (text == null || text.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[i] != input[start + i]) {
+                return null;
+            }
+        }
+        return types[h];
+    }
+
+    public static TokenType lookup(ByteBuffer input, int start, int length) {
+        if (length < 2 || length > 11) {
+            return null;
+        }
+        int h = hash(length, input.get(start), input.get(start + length - 1));
+        byte[] text = texts[h];
+        if (text == null || text.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (text[i] != input.get(start + i)) {
+                return null;
+            }
+        }
+        return types[h];
+    }
+}
@@ -0,0 +1,96 @@
+package br.ufma.ecp.token;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-compilation intern pool for identifiers. A slice that was seen before
+ * is matched against the pooled String byte by byte, so repeated names are
+ * returned as the same instance without decoding them again.
+ * Identifiers are plain ASCII, so byte and char comparisons agree.
+ */
+public class LexemePool {
+    private String[] names = new String[256];
+    private int[] hashes = new int[256];
+    private int size;
+
+    public String intern(ByteBuffer source, int start, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + (source.get(start + i) & 0xff);
+        }
+
+        int mask = names.length - 1;
+        for (int slot = h & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == h && matches(names[slot], source, start, length)) {
+                return names[slot];
+            }
+        }
+        return add(TokenBuffer.decode(source, start, length), h);
+    }
+
+    public String intern(String name) {
+        int h = name.hashCode();
+        int mask = names.length - 1;
+        for (int slot = h & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == h && names[slot].equals(name)) {
+                return names[slot];
+            }
+        }
+        return add(name, h);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(names, null);
+        size = 0;
+    }
+
+    private static boolean matches(String name, ByteBuffer source, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != (source.get(start + i) & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String add(String name, int h) {
+        if (2 * (size + 1) > names.length) {
+            grow();
+        }
+        int mask = names.length - 1;
+        int slot = h & mask;
+        while (names[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        hashes[slot] = h;
+        size++;
+        return name;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldHashes = hashes;
+        names = new String[oldNames.length * 2];
+        hashes = new int[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (names[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                names[slot] = oldNames[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package br.ufma.ecp.token;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Token stream stored as parallel primitive arrays over the source bytes.
+ * Each token is an index; its lexeme only becomes a String when asked for.
+ *
+ * A buffer created with {@link #ring(int, ByteBuffer, LexemePool)} keeps only the last few tokens:
+ * indices keep growing but older slots are overwritten.
+ */
+public class TokenBuffer {
+    public static final int MAX_INT = 32767;
+
+    private static final int INITIAL_CAPACITY = 256;
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final int IDENT = TokenType.IDENT.ordinal();
+
+    private ByteBuffer source;
+    private final LexemePool pool;
+    private final int mask;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private String[] texts;
+    private int size;
+
+    public TokenBuffer(ByteBuffer source) {
+        this(source, null);
+    }
+
+    /**
+     * Identifier lexemes are interned through the pool, so equal names are the same String.
+     */
+    public TokenBuffer(ByteBuffer source, LexemePool pool) {
+        this(source, pool, INITIAL_CAPACITY, -1);
+    }
+
+    private TokenBuffer(ByteBuffer source, LexemePool pool, int capacity, int mask) {
+        this.source = source;
+        this.pool = pool;
+        this.mask = mask;
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+    }
+
+    /**
+     * A fixed-size buffer holding the last {@code capacity} tokens (a power of two),
+     * for streamed or pipelined input where the whole token stream must not be retained.
+     * The source may be null when every lexeme is added as text.
+     */
+    public static TokenBuffer ring(int capacity, ByteBuffer source, LexemePool pool) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("ring capacity must be a power of two: " + capacity);
+        }
+        return new TokenBuffer(source, pool, capacity, capacity - 1);
+    }
+
+    public int add(TokenType type, int start, int length, int line) {
+        if (mask == -1 && size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            if (texts != null) {
+                texts = Arrays.copyOf(texts, capacity);
+            }
+        }
+        int slot = size & mask;
+        types[slot] = type.ordinal();
+        starts[slot] = start;
+        lengths[slot] = length;
+        lines[slot] = line;
+        if (texts != null) {
+            texts[slot] = null;
+        }
+        return size++;
+    }
+
+    /**
+     * Adds a token whose lexeme is already decoded, for sources whose bytes do not outlive the scan.
+     */
+    public int add(TokenType type, int start, int length, int line, String text) {
+        int index = add(type, start, length, line);
+        if (texts == null) {
+            texts = new String[types.length];
+        }
+        texts[index & mask] = pool != null && type == TokenType.IDENT ? pool.intern(text) : text;
+        return index;
+    }
+
+    /**
+     * Adds token {@code index} of {@code from} moved by {@code delta} bytes and
+     * {@code lineDelta} lines, keeping any text stored with it.
+     */
+    public int copy(TokenBuffer from, int index, int delta, int lineDelta) {
+        String text = from.texts != null ? from.texts[index & from.mask] : null;
+        if (text != null) {
+            return add(from.type(index), from.start(index) + delta, from.length(index), from.line(index) + lineDelta, text);
+        }
+        return add(from.type(index), from.start(index) + delta, from.length(index), from.line(index) + lineDelta);
+    }
+
+    // whether the lexeme of this type comes from the source rather than a fixed spelling
+    public boolean hasText(TokenType type) {
+        return type.text() == null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    // empties the buffer for tokens of another source, keeping the arrays
+    public void reset(ByteBuffer source) {
+        this.source = source;
+        size = 0;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index & mask]];
+    }
+
+    public int start(int index) {
+        return starts[index & mask];
+    }
+
+    public int length(int index) {
+        return lengths[index & mask];
+    }
+
+    public int line(int index) {
+        return lines[index & mask];
+    }
+
+    public ByteBuffer source() {
+        return source;
+    }
+
+    public LexemePool pool() {
+        return pool;
+    }
+
+    public String lexeme(int index) {
+        int slot = index & mask;
+        String fixed = TYPES[types[slot]].text();
+        if (fixed != null) {
+            return fixed;
+        }
+        if (texts != null && texts[slot] != null) {
+            return texts[slot];
+        }
+        if (pool != null && types[slot] == IDENT) {
+            return pool.intern(source, starts[slot], lengths[slot]);
+        }
+        return decode(source, starts[slot], lengths[slot]);
+    }
+
+    public static String decode(ByteBuffer source, int start, int length) {
+        if (source.hasArray()) {
+            return new String(source.array(), source.arrayOffset() + start, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        source.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The value of an integer constant, parsed straight from the source
+     * bytes, or -1 if it is above {@link #MAX_INT}, the largest constant
+     * Jack allows.
+     */
+    public int intValue(int index) {
+        int slot = index & mask;
+        int value = 0;
+        if (texts != null && texts[slot] != null) {
+            String text = texts[slot];
+            for (int i = 0; i < text.length(); i++) {
+                value = value * 10 + (text.charAt(i) - '0');
+                if (value > MAX_INT) return -1;
+            }
+            return value;
+        }
+        for (int i = starts[slot], end = i + lengths[slot]; i < end; i++) {
+            value = value * 10 + (source.get(i) - '0');
+            if (value > MAX_INT) return -1;
+        }
+        return value;
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), line(index));
+    }
+}
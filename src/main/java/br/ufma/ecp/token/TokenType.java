@@ -27,6 +27,9 @@ public enum TokenType {
 
      String type;
 
+     // flyweight spelling of keywords, symbols and EOF, shared by every token of that type
+     private String text;
+
      TokenType() {}
 
      TokenType(String c) {
@@ -78,6 +81,24 @@ public enum TokenType {
           DO
      );
 
+     static {
+          for (TokenType token : values()) {
+               if (isKeyword(token)) {
+                    token.text = token.name().toLowerCase();
+               } else if (token.type != null && isSymbol(token.type.charAt(0))) {
+                    token.text = token.type;
+               }
+          }
+          EOF.text = "EOF";
+     }
+
+     /**
+      * The fixed lexeme of this token type, or null when it comes from the source.
+      */
+     public String text() {
+          return text;
+     }
+
      public Object getType() {
           if (type != null) {
                return type;
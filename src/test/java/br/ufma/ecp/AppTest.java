@@ -0,0 +1,43 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AppTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFailedClassLeavesNoOutput () throws IOException {
+        File dir = folder.newFolder("Broken");
+        // the first function is flushed before the error in the second
+        Files.writeString(dir.toPath().resolve("Main.jack"), """
+            class Main {
+                function void main () {
+                    do Output.printInt(1);
+                    return;
+                }
+                function void broken () {
+                    let = 1;
+                    return;
+                }
+            }
+            """);
+
+        try {
+            App.main(new String[] { dir.getPath() });
+            fail("Main.broken accepted");
+        } catch (RuntimeException e) {
+        }
+        assertArrayEquals(new String[] { "Main.jack" }, dir.list());
+    }
+}
@@ -0,0 +1,67 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class AstTest extends TestSupport {
+
+    @Test
+    public void testTreeShape () {
+        var input = """
+            class Main {
+                function void main () {
+                    var int x;
+                    let x = 1 + 2 * x;
+                    return;
+                }
+            }
+            """;
+        Ast ast = new AstParser(input.getBytes(StandardCharsets.UTF_8)).parse();
+
+        assertEquals(Ast.Kind.CLASS, ast.kind(0));
+        assertEquals("Main", ast.text(0));
+
+        int main = ast.first(0);
+        assertEquals(Ast.Kind.SUBROUTINE, ast.kind(main));
+        assertEquals("main", ast.text(main));
+        assertEquals(3, ast.childCount(main));
+
+        int var = ast.first(main);
+        assertEquals(Ast.Kind.VAR, ast.kind(var));
+        assertEquals("int", ast.nameAt(ast.extra(var)));
+
+        // no precedence: (1 + 2) * x
+        int let = ast.next(var);
+        int times = ast.first(let);
+        assertEquals(Ast.Kind.BINARY, ast.kind(times));
+        int plus = ast.first(times);
+        assertEquals(Ast.Kind.BINARY, ast.kind(plus));
+        assertEquals(Ast.Kind.NAME, ast.kind(ast.next(plus)));
+        assertEquals(1, ast.value(ast.first(plus)));
+
+        assertEquals(Ast.Kind.RETURN, ast.kind(ast.next(let)));
+    }
+
+    @Test
+    public void testSameCodeAsParser () throws IOException {
+        var sources = BenchmarkSupport.appSources();
+        sources.add(fromFile("Square/Main.jack").getBytes(StandardCharsets.UTF_8));
+        sources.add(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8));
+        sources.add(fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8));
+        sources.add(BenchmarkSupport.generatedClass(2000).getBytes(StandardCharsets.UTF_8));
+
+        for (byte[] source : sources) {
+            var parser = new Parser(source);
+            parser.setOutputMode(Parser.OutputMode.VM);
+            parser.parse();
+
+            var generator = new CodeGenerator(new AstParser(source).parse());
+            generator.generate();
+            assertEquals(parser.VMOutput(), generator.VMOutput());
+        }
+    }
+}
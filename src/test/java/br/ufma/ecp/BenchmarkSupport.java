@@ -0,0 +1,69 @@
+package br.ufma.ecp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal timing harness for the *Benchmark classes. They are plain main()
+ * programs so surefire never runs them:
+ *
+ *   mvn test-compile
+ *   java -cp target/classes:target/test-classes br.ufma.ecp.ScannerBenchmark
+ */
+public class BenchmarkSupport {
+    protected static long sink;
+
+    public static List<byte[]> appSources() throws IOException {
+        List<byte[]> sources = new ArrayList<>();
+        for (File dir : new File("apps").listFiles()) {
+            if (!dir.isDirectory()) continue;
+            for (File f : dir.listFiles()) {
+                if (f.getName().endsWith(".jack")) {
+                    sources.add(Files.readAllBytes(f.toPath()));
+                }
+            }
+        }
+        return sources;
+    }
+
+    public static double measure(String label, int iterations, Runnable body) {
+        for (int i = 0; i < iterations; i++) {
+            body.run();
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long begin = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                body.run();
+            }
+            best = Math.min(best, System.nanoTime() - begin);
+        }
+
+        double nsPerOp = (double) best / iterations;
+        System.out.printf("%-40s %12.1f ns/op%n", label, nsPerOp);
+        return nsPerOp;
+    }
+
+    // a single large class, the shape our code generators emit: unrolled table lookups
+    public static String generatedClass(int statements) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/** generated lookup table */\n");
+        sb.append("class Table {\n");
+        sb.append("    field Array values;\n\n");
+        sb.append("    method void fill() {\n");
+        sb.append("        var int i;\n");
+        for (int i = 0; i < statements; i++) {
+            sb.append("        // entry ").append(i).append('\n');
+            sb.append("        let values[").append(i % 1000).append("] = (i * ").append(i % 97)
+              .append(") + ").append(i % 32767).append(";\n");
+        }
+        sb.append("        return;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
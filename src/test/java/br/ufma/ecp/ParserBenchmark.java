@@ -0,0 +1,106 @@
+package br.ufma.ecp;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ParserBenchmark extends BenchmarkSupport {
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> sources = appSources();
+
+        outputModes(sources);
+        ast(sources);
+        reuse(sources);
+        pipelined();
+    }
+
+    // every class in apps/, with and without the XML parse tree
+    private static void outputModes(List<byte[]> sources) {
+        for (Parser.OutputMode mode : Parser.OutputMode.values()) {
+            measure("apps/ " + mode, 500, () -> {
+                for (byte[] source : sources) {
+                    var parser = new Parser(source);
+                    parser.setOutputMode(mode);
+                    parser.parse();
+                    sink += parser.VMOutput().length() + parser.XMLOutput().length();
+                }
+            });
+        }
+    }
+
+    // code straight from the parser vs parsing to an AST and walking it
+    private static void ast(List<byte[]> sources) {
+        measure("apps/ direct", 500, () -> {
+            for (byte[] source : sources) {
+                var parser = new Parser(source);
+                parser.setOutputMode(Parser.OutputMode.VM);
+                parser.parse();
+                sink += parser.VMCode().size();
+            }
+        });
+        measure("apps/ via AST", 500, () -> {
+            for (byte[] source : sources) {
+                var generator = new CodeGenerator(new AstParser(source).parse());
+                generator.generate();
+                sink += generator.VMCode().size();
+            }
+        });
+    }
+
+    // a new parser per file vs one parser reset between files
+    private static void reuse(List<byte[]> sources) {
+        Runnable fresh = () -> {
+            for (byte[] source : sources) {
+                var parser = new Parser(source);
+                parser.setOutputMode(Parser.OutputMode.VM);
+                parser.parse();
+                sink += parser.VMCode().size();
+            }
+        };
+        var parser = new Parser(sources.get(0));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        Runnable reused = () -> {
+            for (byte[] source : sources) {
+                parser.reset(source);
+                parser.parse();
+                sink += parser.VMCode().size();
+            }
+        };
+        measure("apps/ new parser per file", 500, fresh);
+        System.out.printf("%-40s %12d bytes/file%n", "", allocatedPerFile(fresh, sources.size()));
+        measure("apps/ reset parser", 500, reused);
+        System.out.printf("%-40s %12d bytes/file%n", "", allocatedPerFile(reused, sources.size()));
+    }
+
+    private static long allocatedPerFile(Runnable body, int files) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < 100; i++) {
+            body.run();
+        }
+        return (threads.getThreadAllocatedBytes(id) - before) / (100L * files);
+    }
+
+    // sequential vs scanner-on-a-second-thread, over growing single classes
+    private static void pipelined() {
+        for (int statements : new int[] { 10, 100, 1_000, 10_000 }) {
+            ByteBuffer input = ByteBuffer.wrap(generatedClass(statements).getBytes(StandardCharsets.UTF_8));
+            int iterations = Math.max(5, 50_000 / statements);
+            System.out.println(input.capacity() + " bytes");
+
+            measure("  sequential", iterations, () -> {
+                var parser = new Parser(input);
+                parser.parse();
+                sink += parser.VMOutput().length();
+            });
+            measure("  pipelined", iterations, () -> {
+                var parser = new Parser(input, true);
+                parser.parse();
+                sink += parser.VMOutput().length();
+            });
+        }
+    }
+}
@@ -2,10 +2,16 @@ package br.ufma.ecp;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.junit.Assert.assertTrue;
 
 public class ParserTest extends TestSupport{
     @Test
@@ -314,4 +320,156 @@ public class ParserTest extends TestSupport{
         var result = parser.XMLOutput();
         System.out.println(result);
     }
+
+    @Test
+    public void testStreamingParser() throws IOException {
+        for (var file : new String[] { "Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack" }) {
+            byte[] input = fromFile(file).getBytes(StandardCharsets.UTF_8);
+
+            var expected = new Parser(input);
+            expected.parse();
+            var parser = new Parser(Channels.newChannel(new ByteArrayInputStream(input)));
+            parser.parse();
+
+            assertEquals(expected.XMLOutput(), parser.XMLOutput());
+            assertEquals(expected.VMOutput(), parser.VMOutput());
+        }
+    }
+
+    @Test
+    public void testPipelinedParser() throws IOException {
+        var inputs = new String[] {
+            fromFile("Square/Main.jack"), fromFile("Square/Square.jack"), fromFile("Square/SquareGame.jack"),
+            BenchmarkSupport.generatedClass(5000)
+        };
+        for (var text : inputs) {
+            ByteBuffer input = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+            var expected = new Parser(input);
+            expected.parse();
+            var parser = new Parser(input, true);
+            parser.parse();
+
+            assertEquals(expected.XMLOutput(), parser.XMLOutput());
+            assertEquals(expected.VMOutput(), parser.VMOutput());
+        }
+    }
+
+    @Test
+    public void testOutputModes() throws IOException {
+        byte[] input = fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8);
+        var both = new Parser(input);
+        both.parse();
+
+        var vm = new Parser(input);
+        vm.setOutputMode(Parser.OutputMode.VM);
+        vm.parse();
+        assertEquals(both.VMOutput(), vm.VMOutput());
+        assertEquals("", vm.XMLOutput());
+
+        var xml = new Parser(input);
+        xml.setOutputMode(Parser.OutputMode.XML);
+        xml.parse();
+        assertEquals(both.XMLOutput(), xml.XMLOutput());
+        assertEquals("", xml.VMOutput());
+    }
+
+    @Test
+    public void testStreamedOutput() throws IOException {
+        var inputs = new String[] {
+            fromFile("Square/Main.jack"), fromFile("Square/Square.jack"), fromFile("Square/SquareGame.jack"),
+            BenchmarkSupport.generatedClass(5000)
+        };
+        for (var text : inputs) {
+            byte[] input = text.getBytes(StandardCharsets.UTF_8);
+            var expected = new Parser(input);
+            expected.parse();
+
+            var out = new StringWriter();
+            var parser = new Parser(input);
+            parser.setOutputMode(Parser.OutputMode.VM);
+            parser.setOutput(out);
+            parser.parse();
+            assertEquals(expected.VMOutput(), out.toString());
+            assertEquals("", parser.VMOutput());
+        }
+    }
+
+    @Test
+    public void testReset() throws IOException {
+        var sources = BenchmarkSupport.appSources();
+        sources.add(fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8));
+
+        Parser reused = null;
+        for (byte[] source : sources) {
+            var expected = new Parser(source);
+            expected.parse();
+
+            if (reused == null) {
+                reused = new Parser(source);
+            } else {
+                reused.reset(source);
+            }
+            reused.parse();
+            assertEquals(expected.XMLOutput(), reused.XMLOutput());
+            assertEquals(expected.VMOutput(), reused.VMOutput());
+        }
+    }
+
+    @Test
+    public void testIntegerConstantRange() {
+        var parser = new Parser("class Main { function int f() { return 32767; } }".getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        parser.parse();
+        assertTrue(parser.VMOutput().contains("push constant 32767\n"));
+
+        for (var constant : new String[] { "32768", "100000", "99999999999" }) {
+            var input = ("class Main { function int f() { return " + constant + "; } }").getBytes(StandardCharsets.UTF_8);
+            try {
+                new Parser(input).parse();
+                fail(constant + " accepted");
+            } catch (RuntimeException e) {
+            }
+            try {
+                new AstParser(input).parse();
+                fail(constant + " accepted");
+            } catch (RuntimeException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testPipelineStopsOnFailure() throws InterruptedException {
+        // more tokens than the ring holds, after a let the parser fails on
+        var text = new StringBuilder("class Main { function void f() { var int x; let a[0] = 1; ");
+        for (int i = 0; i < 3000; i++) {
+            text.append("let x = x + 1; ");
+        }
+        text.append("return; } }");
+        ByteBuffer input = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+
+        try {
+            new Parser(input, true).parse();
+            fail("undeclared array accepted");
+        } catch (RuntimeException e) {
+        }
+        assertScannerThreadsStop();
+
+        // dropped before parsing
+        new Parser(input, true).close();
+        assertScannerThreadsStop();
+    }
+
+    private static void assertScannerThreadsStop() throws InterruptedException {
+        for (int i = 0; i < 200 && scannerThreads() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, scannerThreads());
+    }
+
+    private static long scannerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().equals("jack-scanner") && t.isAlive())
+            .count();
+    }
 }
@@ -0,0 +1,135 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import br.ufma.ecp.token.TokenType;
+
+public class ProjectIndexTest extends TestSupport {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExtract () throws IOException {
+        var source = fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8);
+        var info = ProjectIndex.extract(ByteBuffer.wrap(source));
+
+        assertEquals("Square", info.name());
+        assertEquals(3, info.fields().size());
+        assertEquals(new ProjectIndex.Variable("x", "int"), info.fields().get(0));
+
+        var constructor = info.subroutines().get("new");
+        assertEquals(TokenType.CONSTRUCTOR, constructor.kind());
+        assertEquals("Square", constructor.returnType());
+        assertEquals(List.of("int", "int", "int"), constructor.parameterTypes());
+        assertEquals(TokenType.METHOD, info.subroutines().get("moveUp").kind());
+
+        assertNull(ProjectIndex.extract(ByteBuffer.wrap("class A { function void f() {".getBytes())));
+    }
+
+    @Test
+    public void testCache () throws IOException {
+        Path dir = folder.newFolder().toPath();
+        for (String name : new String[] { "Main.jack", "Square.jack", "SquareGame.jack" }) {
+            Files.copy(Paths.get("src/test/resources/Square", name), dir.resolve(name));
+        }
+        List<Path> files = List.of(dir.resolve("Main.jack"), dir.resolve("Square.jack"), dir.resolve("SquareGame.jack"));
+        Path cache = dir.resolve(".jackindex");
+
+        var built = ProjectIndex.build(files, cache);
+        assertTrue(Files.size(cache) > 0);
+        assertEquals(3, ProjectIndex.readCache(cache).size());
+
+        var cached = ProjectIndex.build(files, cache);
+        for (var info : built.classes()) {
+            assertEquals(info, cached.get(info.name()));
+        }
+
+        // an edited file is extracted again
+        Files.writeString(dir.resolve("Main.jack"), "class Main { function void run(int a, Square b) { return; } }");
+        var edited = ProjectIndex.build(files, cache);
+        assertEquals(List.of("int", "Square"), edited.subroutine("Main", "run").parameterTypes());
+        assertNull(edited.subroutine("Main", "main"));
+        assertEquals(3, ProjectIndex.readCache(cache).size());
+
+        // so is one whose length did not change
+        Files.writeString(dir.resolve("Main.jack"), "class Main { function void fly(int a, Square b) { return; } }");
+        edited = ProjectIndex.build(files, cache);
+        assertNull(edited.subroutine("Main", "run"));
+        assertEquals(List.of("int", "Square"), ProjectIndex.readCache(cache)
+            .get(dir.resolve("Main.jack").toString()).info().subroutines().get("fly").parameterTypes());
+    }
+
+    @Test
+    public void testCacheLongParameterList () throws IOException {
+        Path dir = folder.newFolder().toPath();
+        var parameters = new StringBuilder("int p0");
+        for (int i = 1; i < 300; i++) {
+            parameters.append(", int p").append(i);
+        }
+        Path source = dir.resolve("Wide.jack");
+        Files.writeString(source, "class Wide { function void f(" + parameters + ") { return; } }");
+        Path cache = dir.resolve(".jackindex");
+
+        ProjectIndex.build(List.of(source), cache);
+        assertEquals(300, ProjectIndex.build(List.of(source), cache).subroutine("Wide", "f").parameterTypes().size());
+        assertEquals(300, ProjectIndex.readCache(cache).get(source.toString()).info()
+            .subroutines().get("f").parameterTypes().size());
+    }
+
+    @Test
+    public void testCacheWriteFailure () throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Path source = dir.resolve("Square.jack");
+        Files.copy(Paths.get("src/test/resources/Square/Square.jack"), source);
+
+        // a non-empty directory where the cache should go cannot be replaced
+        Path cache = dir.resolve("cache");
+        Files.createDirectories(cache.resolve("taken"));
+
+        var index = ProjectIndex.build(List.of(source), cache);
+        assertEquals("Square", index.get("Square").name());
+        assertTrue(Files.isDirectory(cache));
+        assertFalse(Files.exists(dir.resolve("cache.tmp")));
+    }
+
+    @Test
+    public void testCallChecking () throws IOException {
+        var index = ProjectIndex.of(List.of(
+            ProjectIndex.extract(ByteBuffer.wrap(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8)))));
+
+        assertTrue(compiles(index, "let s = Square.new(0, 0, 30); do s.moveUp(); do Output.printInt(1);"));
+        assertFalse(compiles(index, "let s = Square.make(0, 0, 30);"));
+        assertFalse(compiles(index, "let s = Square.new(0, 0);"));
+        assertFalse(compiles(index, "do s.moveUp(1);"));
+        assertFalse(compiles(index, "do Square.moveUp();"));
+        assertFalse(compiles(index, "let s = s.new(1, 2, 3);"));
+    }
+
+    private static boolean compiles(ProjectIndex index, String statements) {
+        var input = "class Main { function void main() { var Square s; " + statements + " return; } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setIndex(index);
+        try {
+            parser.parse();
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package br.ufma.ecp;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufma.ecp.token.Keywords;
+import br.ufma.ecp.token.TokenBuffer;
+import br.ufma.ecp.token.TokenType;
+
+public class ScannerBenchmark extends BenchmarkSupport {
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> sources = appSources();
+
+        keywordLookup(sources);
+        fileInput();
+        commentDense();
+    }
+
+    // run with --add-modules jdk.incubator.vector to compare against the vector search
+    private static void commentDense() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("/**\n * Generated accessor ").append(i).append(", see the lookup table docs.\n");
+            sb.append(" * Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod.\n */\n");
+            sb.append("        // ").append("-".repeat(70)).append('\n');
+            sb.append("                                                        \n");
+            sb.append("let x = ").append(i).append(";\n");
+        }
+        ByteBuffer input = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.println("comment-dense input of " + input.capacity() + " bytes, best search: "
+            + ByteSearch.get().getClass().getSimpleName());
+
+        measure("tokenize, scalar trivia", 50, () -> {
+            sink += new Scanner(input, ByteSearch.scalar()).tokenize().size();
+        });
+        measure("tokenize, ByteSearch.get()", 50, () -> {
+            sink += new Scanner(input, ByteSearch.get()).tokenize().size();
+        });
+    }
+
+    // old App path (readAllBytes -> String -> getBytes) against a mapped file
+    private static void fileInput() throws Exception {
+        File file = File.createTempFile("Table", ".jack");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), generatedClass(200_000));
+        System.out.println("file input over " + file.length() + " bytes");
+
+        measure("readAllBytes + String + getBytes", 5, () -> {
+            try {
+                String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                sink += new Scanner(text.getBytes(StandardCharsets.UTF_8)).tokenize().size();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        measure("FileChannel.map", 5, () -> {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                sink += new Scanner(input).tokenize().size();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    private static void keywordLookup(List<byte[]> sources) {
+        Map<String, TokenType> keywords = new HashMap<>();
+        for (TokenType token : TokenType.values()) {
+            if (TokenType.isKeyword(token)) {
+                keywords.put(token.toString().toLowerCase(), token);
+            }
+        }
+
+        // every identifier-or-keyword slice in apps/, as (source, start, length)
+        List<int[]> words = new ArrayList<>();
+        for (int s = 0; s < sources.size(); s++) {
+            TokenBuffer tokens = new Scanner(sources.get(s)).tokenize();
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.type(i) == TokenType.IDENT || TokenType.isKeyword(tokens.type(i))) {
+                    words.add(new int[] { s, tokens.start(i), tokens.length(i) });
+                }
+            }
+        }
+        System.out.println("keyword lookup over " + words.size() + " words");
+
+        measure("HashMap<String,TokenType>", 200, () -> {
+            for (int[] w : words) {
+                TokenType type = keywords.get(new String(sources.get(w[0]), w[1], w[2], StandardCharsets.UTF_8));
+                sink += type == null ? 0 : type.ordinal();
+            }
+        });
+        measure("Keywords.lookup(byte[])", 200, () -> {
+            for (int[] w : words) {
+                TokenType type = Keywords.lookup(sources.get(w[0]), w[1], w[2]);
+                sink += type == null ? 0 : type.ordinal();
+            }
+        });
+    }
+}
@@ -1,13 +1,23 @@
 package br.ufma.ecp;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Random;
 
 import org.junit.Test;
 
+import br.ufma.ecp.token.Keywords;
+import br.ufma.ecp.token.LexemePool;
 import br.ufma.ecp.token.Token;
+import br.ufma.ecp.token.TokenBuffer;
 import br.ufma.ecp.token.TokenType;
 
 
@@ -57,4 +67,216 @@ public class ScannerTest extends TestSupport {
         System.out.println(result);
         assertEquals(expectedResult, result.toString());
     }
+
+    @Test
+    public void testTokenizeMatchesNextToken() throws IOException {
+        var input = fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8);
+
+        TokenBuffer tokens = new Scanner(input).tokenize();
+        var scanner = new Scanner(input);
+
+        int i = 0;
+        for (Token tk = scanner.nextToken(); tk.getType() != TokenType.EOF; tk = scanner.nextToken(), i++) {
+            assertEquals(tk.getType(), tokens.type(i));
+            assertEquals(tk.getLexeme(), tokens.lexeme(i));
+            assertEquals(tk.getLine().intValue(), tokens.line(i));
+            assertEquals(tk.toString(), tokens.token(i).toString());
+        }
+        assertEquals(TokenType.EOF, tokens.type(i));
+        assertEquals(i + 1, tokens.size());
+    }
+
+    @Test
+    public void testKeywordLookup() {
+        for (TokenType type : TokenType.values()) {
+            if (TokenType.isKeyword(type)) {
+                byte[] text = (" " + type.toString().toLowerCase() + " ").getBytes();
+                assertEquals(type, Keywords.lookup(text, 1, text.length - 2));
+            }
+        }
+
+        for (String word : new String[] { "x", "iff", "whilee", "Class", "thus", "fals", "constructors", "retu" }) {
+            assertNull(word, Keywords.lookup(word.getBytes(), 0, word.length()));
+        }
+    }
+
+    @Test
+    public void testScannerWithDirectBuffer() throws IOException {
+        byte[] bytes = fromFile("Square/SquareGame.jack").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+
+        var expected = new Scanner(bytes);
+        var scanner = new Scanner(direct);
+        for (Token tk = expected.nextToken(); tk.getType() != TokenType.EOF; tk = expected.nextToken()) {
+            assertEquals(tk.toString(), scanner.nextToken().toString());
+        }
+        assertEquals(TokenType.EOF, scanner.nextToken().getType());
+    }
+
+    @Test
+    public void testStreamingScannerAcrossWindowBoundaries() throws IOException {
+        var text = fromFile("Square/Square.jack")
+            + "/* a block comment much longer than the window ***/ \"a string literal longer than the window\" "
+            + "// trailing line comment";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        for (int window : new int[] { 1, 2, 3, 7, 16, 64 }) {
+            var expected = new Scanner(bytes);
+            var scanner = new Scanner(new ByteArrayInputStream(bytes), window);
+            Token tk;
+            do {
+                tk = expected.nextToken();
+                Token actual = scanner.nextToken();
+                assertEquals(tk.getType(), actual.getType());
+                assertEquals(tk.getLexeme(), actual.getLexeme());
+                assertEquals(tk.getLine(), actual.getLine());
+            } while (tk.getType() != TokenType.EOF);
+        }
+    }
+
+    @Test
+    public void testManyConsecutiveComments() {
+        var input = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            input.append(i % 2 == 0 ? "// license header\n" : "/* block */\n");
+        }
+        input.append("class");
+
+        var scanner = new Scanner(input.toString().getBytes(StandardCharsets.UTF_8));
+        Token tk = scanner.nextToken();
+        assertEquals(TokenType.CLASS, tk.getType());
+        assertEquals(200_001, tk.getLine().intValue());
+        assertEquals(TokenType.EOF, scanner.nextToken().getType());
+    }
+
+    @Test
+    public void testUnterminatedBlockComment() {
+        var scanner = new Scanner("let x = 1; /* never closed\n".getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < 5; i++) {
+            scanner.nextToken();
+        }
+        Token tk = scanner.nextToken();
+        assertEquals(TokenType.ILLEGAL, tk.getType());
+        assertEquals("unterminated comment", tk.getLexeme());
+        assertEquals(TokenType.EOF, scanner.nextToken().getType());
+    }
+
+    @Test
+    public void testByteSearchMatchesScalar() {
+        var random = new Random(42);
+        byte[] alphabet = " \t\r\n*/ax\0".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; i++) {
+            // long blank runs so whole vector lanes get skipped
+            bytes[i] = random.nextInt(4) == 0 ? alphabet[random.nextInt(alphabet.length)] : (byte) ' ';
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+        ByteSearch scalar = ByteSearch.scalar();
+        ByteSearch best = ByteSearch.get();
+        for (int from = 0; from < bytes.length; from += 7) {
+            assertEquals(scalar.skipBlanks(buf, from, bytes.length), best.skipBlanks(buf, from, bytes.length));
+            assertEquals(scalar.indexOf(buf, from, bytes.length, (byte) '*', (byte) 0), best.indexOf(buf, from, bytes.length, (byte) '*', (byte) 0));
+            assertEquals(scalar.count(buf, from, bytes.length, (byte) '\n'), best.count(buf, from, bytes.length, (byte) '\n'));
+        }
+    }
+
+    @Test
+    public void testScalarAndVectorScannersAgree() throws IOException {
+        var text = "/** header\n * license\n **/\n" + "    ".repeat(40) + "\n// note\n" + fromFile("Square/SquareGame.jack");
+        ByteBuffer input = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        var expected = new Scanner(input, ByteSearch.scalar());
+        var scanner = new Scanner(input, ByteSearch.get());
+        Token tk;
+        do {
+            tk = expected.nextToken();
+            Token actual = scanner.nextToken();
+            assertEquals(tk.toString(), actual.toString());
+            assertEquals(tk.getLine(), actual.getLine());
+        } while (tk.getType() != TokenType.EOF);
+    }
+
+    @Test
+    public void testInternedIdentifiers() throws IOException {
+        ByteBuffer input = ByteBuffer.wrap(fromFile("Square/Square.jack").getBytes(StandardCharsets.UTF_8));
+        var pool = new LexemePool();
+        var tokens = new TokenBuffer(input, pool);
+        var scanner = new Scanner(input);
+        while (tokens.type(scanner.scanInto(tokens)) != TokenType.EOF);
+
+        var seen = new HashMap<String, String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String lexeme = tokens.lexeme(i);
+            if (tokens.type(i) == TokenType.IDENT) {
+                assertSame(seen.computeIfAbsent(lexeme, k -> lexeme), lexeme);
+                assertSame(lexeme, pool.intern(new String(lexeme)));
+            } else if (tokens.type(i) != TokenType.NUMBER && tokens.type(i) != TokenType.STRING) {
+                assertSame(tokens.type(i).text(), lexeme);
+            }
+        }
+        assertEquals(seen.size(), pool.size());
+    }
+
+    private static void assertSameTokens(TokenBuffer expected, TokenBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.type(i), actual.type(i));
+            assertEquals(expected.start(i), actual.start(i));
+            assertEquals(expected.length(i), actual.length(i));
+            assertEquals(expected.line(i), actual.line(i));
+            assertEquals(expected.lexeme(i), actual.lexeme(i));
+        }
+    }
+
+    @Test
+    public void testIncrementalLexerLocalEdit() throws IOException {
+        var text = fromFile("Square/SquareGame.jack");
+        var lexer = new IncrementalLexer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+
+        int offset = text.indexOf("moveUp");
+        TokenBuffer tokens = lexer.edit(offset, 6, "moveNorth".getBytes(StandardCharsets.UTF_8));
+
+        var edited = text.substring(0, offset) + "moveNorth" + text.substring(offset + 6);
+        assertSameTokens(new Scanner(edited.getBytes(StandardCharsets.UTF_8)).tokenize(), tokens);
+        assertTrue("rescanned " + lexer.rescanned(), lexer.rescanned() <= 3);
+    }
+
+    @Test
+    public void testIncrementalLexerRandomEdits() throws IOException {
+        var random = new Random(7);
+        String[] snippets = { "", "x", "/*", "*/", "//", "\n", "\"", " ", "12", "let", "+", "/", "*" };
+        var text = fromFile("Square/Square.jack");
+        var lexer = new IncrementalLexer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+
+        for (int n = 0; n < 500; n++) {
+            int offset = random.nextInt(text.length() + 1);
+            int removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+            String inserted = snippets[random.nextInt(snippets.length)];
+
+            TokenBuffer tokens = lexer.edit(offset, removed, inserted.getBytes(StandardCharsets.UTF_8));
+            text = text.substring(0, offset) + inserted + text.substring(offset + removed);
+
+            assertSameTokens(new Scanner(text.getBytes(StandardCharsets.UTF_8)).tokenize(), tokens);
+        }
+    }
+
+    @Test
+    public void testIncrementalLexerKeepsErrorText() {
+        var text = "let x = 1;\nlet y = 2;\n/* open";
+        var lexer = new IncrementalLexer(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+
+        // the tokens after x, the unterminated comment among them, are shifted
+        TokenBuffer tokens = lexer.edit(4, 1, "xs".getBytes(StandardCharsets.UTF_8));
+        var edited = "let xs = 1;\nlet y = 2;\n/* open";
+        var expected = new Scanner(edited.getBytes(StandardCharsets.UTF_8)).tokenize();
+        assertSameTokens(expected, tokens);
+        assertEquals("unterminated comment", tokens.lexeme(tokens.size() - 2));
+
+        // another edit in front of it, this time copying from the lexer's own result
+        tokens = lexer.edit(12, 0, "\n".getBytes(StandardCharsets.UTF_8));
+        edited = "let xs = 1;\n\nlet y = 2;\n/* open";
+        assertSameTokens(new Scanner(edited.getBytes(StandardCharsets.UTF_8)).tokenize(), tokens);
+    }
 }
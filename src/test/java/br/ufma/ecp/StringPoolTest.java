@@ -0,0 +1,148 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.opt.OptTestSupport;
+
+public class StringPoolTest extends TestSupport {
+
+    @Test
+    public void testPooledLiterals () {
+        var input = """
+            class Main {
+                static int a, b;
+                function void main () {
+                    do Output.printString("hi");
+                    do Output.printString("hi");
+                    return;
+                }
+                function void other () {
+                    do Output.printString("x");
+                    return;
+                }
+            }
+            """;
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        var pool = new StringPool();
+        parser.setStringPool(pool);
+        parser.parse();
+
+        var expected = """
+            function Main.main 0
+            push static 2
+            if-goto STRING0
+            call Main.$strings 0
+            pop temp 0
+            label STRING0
+            push static 2
+            call Output.printString 1
+            pop temp 0
+            push static 2
+            if-goto STRING1
+            call Main.$strings 0
+            pop temp 0
+            label STRING1
+            push static 2
+            call Output.printString 1
+            pop temp 0
+            push constant 0
+            return
+            function Main.other 0
+            push static 3
+            if-goto STRING0
+            call Main.$strings 0
+            pop temp 0
+            label STRING0
+            push static 3
+            call Output.printString 1
+            pop temp 0
+            push constant 0
+            return
+            function Main.$strings 0
+            push constant 2
+            call String.new 1
+            push constant 104
+            call String.appendChar 2
+            push constant 105
+            call String.appendChar 2
+            pop static 2
+            push constant 1
+            call String.new 1
+            push constant 120
+            call String.appendChar 2
+            pop static 3
+            push constant 0
+            return
+            """;
+        assertEquals(expected, parser.VMOutput());
+        assertEquals(2, pool.pooled());
+        assertEquals(3, pool.uses());
+        assertEquals(6 + 6 + 4, pool.inlineSize());
+        assertEquals(3 * 6 + 7 + 5 + 3, pool.pooledSize());
+        assertEquals(3 + 3 + 1, pool.savedPerEvaluation());
+
+        // the AST path pools the same way
+        var generator = new CodeGenerator(new AstParser(input.getBytes(StandardCharsets.UTF_8)).parse());
+        generator.setStringPool(new StringPool());
+        generator.generate();
+        assertEquals(expected, generator.VMOutput());
+    }
+
+    @Test
+    public void testStaticLimit () {
+        var statics = new StringBuilder("static int s0");
+        for (int i = 1; i < StringPool.MAX_STATICS - 1; i++) {
+            statics.append(", s").append(i);
+        }
+        var input = "class Main { " + statics + "; function void main () {"
+            + " do Output.printString(\"a\"); do Output.printString(\"b\"); do Output.printString(\"a\"); return; } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        var pool = new StringPool();
+        parser.setStringPool(pool);
+        parser.parse();
+
+        // one static left: "a" gets it, "b" is built inline
+        var vm = parser.VMOutput();
+        assertTrue(vm.contains("push static 239\n"));
+        assertTrue(vm.contains("push constant 98\ncall String.appendChar 2\ncall Output.printString 1\n"));
+        assertEquals(1, pool.pooled());
+        assertEquals(2, pool.uses());
+        assertEquals(1, pool.inlined());
+    }
+
+    @Test
+    public void testSameBehaviour () throws IOException {
+        var plain = OptTestSupport.run(compile(null));
+        var pooled = OptTestSupport.run(compile(new StringPool()));
+
+        assertTrue(plain.output().contains("Score: \n0\nScore: \n1\n"));
+        assertEquals(plain.output(), pooled.output());
+        assertEquals(5, plain.calls("String.new"));
+        assertEquals(2, pooled.calls("String.new"));
+        assertTrue(pooled.executed() < plain.executed());
+    }
+
+    private static List<VMCode> compile(StringPool pool) throws IOException {
+        List<VMCode> classes = new ArrayList<>();
+        for (String path : OptTestSupport.PROGRAM) {
+            var parser = new Parser(fromFile(path).getBytes(StandardCharsets.UTF_8));
+            parser.setOutputMode(Parser.OutputMode.VM);
+            if (pool != null) {
+                parser.setStringPool(pool);
+            }
+            parser.parse();
+            classes.add(parser.VMCode());
+        }
+        return classes;
+    }
+}
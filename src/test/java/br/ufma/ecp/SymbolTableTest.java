@@ -0,0 +1,58 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SymbolTableTest {
+
+    @Test
+    public void testScopes () {
+        var table = new SymbolTable();
+        table.define("x", "int", SymbolTable.Kind.FIELD);
+        table.define("y", "int", SymbolTable.Kind.FIELD);
+        table.define("count", "int", SymbolTable.Kind.STATIC);
+
+        table.startSubroutine();
+        table.define("x", "Array", SymbolTable.Kind.ARG);
+        table.define("i", "int", SymbolTable.Kind.VAR);
+        table.define("i", "char", SymbolTable.Kind.VAR);
+
+        assertEquals(new SymbolTable.Symbol("x", "Array", SymbolTable.Kind.ARG, 0), table.resolve("x"));
+        assertEquals(new SymbolTable.Symbol("y", "int", SymbolTable.Kind.FIELD, 1), table.resolve("y"));
+        assertEquals(new SymbolTable.Symbol("i", "int", SymbolTable.Kind.VAR, 0), table.resolve("i"));
+        assertEquals(2, table.varCount(SymbolTable.Kind.FIELD));
+        assertEquals(1, table.varCount(SymbolTable.Kind.STATIC));
+        assertEquals(1, table.varCount(SymbolTable.Kind.VAR));
+
+        table.startSubroutine();
+        assertEquals(SymbolTable.Kind.FIELD, table.resolve("x").kind());
+        assertNull(table.resolve("i"));
+        assertEquals(0, table.varCount(SymbolTable.Kind.ARG));
+
+        table.reset();
+        assertNull(table.resolve("x"));
+        assertEquals(0, table.varCount(SymbolTable.Kind.FIELD));
+    }
+
+    @Test
+    public void testGrowth () {
+        var table = new SymbolTable();
+        for (int round = 0; round < 50; round++) {
+            table.reset();
+            for (int i = 0; i < 100; i++) {
+                table.define("f" + round + "_" + i, "int", SymbolTable.Kind.FIELD);
+            }
+            table.startSubroutine();
+            for (int i = 0; i < 100; i++) {
+                table.define("v" + i, "int", SymbolTable.Kind.VAR);
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, table.resolve("f" + round + "_" + i).index());
+                assertEquals(i, table.resolve("v" + i).index());
+            }
+            assertNull(table.resolve("f" + (round - 1) + "_0"));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package br.ufma.ecp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class VMCodeTest {
+
+    @Test
+    public void testInstructionFields () {
+        var input = """
+            class Main {
+                function void main () {
+                    var Array a;
+                    let a[3] = 7;
+                    do Output.printInt(a[3]);
+                    return;
+                }
+            }
+            """;
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.parse();
+        VMCode code = parser.VMCode();
+
+        assertEquals(VMCode.Op.FUNCTION, code.op(0));
+        assertEquals("Main.main", code.name(0));
+        assertEquals(1, code.count(0));
+
+        assertEquals(VMCode.Op.PUSH, code.op(1));
+        assertEquals(VMWriter.Segment.CONST, code.segment(1));
+        assertEquals(3, code.operand(1));
+
+        int call = code.size() - 4;
+        assertEquals(VMCode.Op.CALL, code.op(call));
+        assertEquals("Output.printInt", code.name(call));
+        assertEquals(1, code.count(call));
+
+        assertEquals(VMCode.Op.RETURN, code.op(code.size() - 1));
+        assertEquals(parser.VMOutput(), code.text());
+    }
+
+    @Test
+    public void testEncodeRoundTrip () {
+        long word = VMCode.encode(VMCode.Op.POP, VMWriter.Segment.TEMP, 65535, 32767);
+        assertEquals(VMCode.Op.POP, VMCode.op(word));
+        assertEquals(VMWriter.Segment.TEMP, VMCode.segment(word));
+        assertEquals(65535, VMCode.count(word));
+        assertEquals(32767, VMCode.operand(word));
+    }
+
+    @Test
+    public void testEncodeRejectsCount () {
+        for (int count : new int[] { -1, 65536 }) {
+            try {
+                VMCode.encode(VMCode.Op.CALL, null, count, 0);
+                fail(count + " accepted");
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package br.ufma.ecp;
+
+public class VMWriterBenchmark extends BenchmarkSupport {
+    private static final int INSTRUCTIONS = 10_000;
+
+    public static void main(String[] args) {
+        double ns = measure("VMWriter, " + INSTRUCTIONS + " instructions", 200, () -> {
+            var writer = new VMWriter();
+            emit(writer, INSTRUCTIONS);
+            sink += writer.vmOutput().length();
+        });
+        System.out.printf("%.1f M instructions/s%n", INSTRUCTIONS / ns * 1000);
+    }
+
+    // a mix close to what the parser emits for statement-heavy code
+    static void emit(VMWriter writer, int instructions) {
+        for (int i = 0; i < instructions; i += 10) {
+            writer.writePush(VMWriter.Segment.LOCAL, i & 7);
+            writer.writePush(VMWriter.Segment.CONST, i & 32767);
+            writer.writeArithmetic(VMWriter.Command.ADD);
+            writer.writePop(VMWriter.Segment.POINTER, 1);
+            writer.writePush(VMWriter.Segment.THAT, 0);
+            writer.writeCall("Math.multiply", 2);
+            writer.writeIf("IF_TRUE" + (i & 15));
+            writer.writeGoto("IF_FALSE" + (i & 15));
+            writer.writeLabel("IF_TRUE" + (i & 15));
+            writer.writePop(VMWriter.Segment.TEMP, 0);
+        }
+    }
+}
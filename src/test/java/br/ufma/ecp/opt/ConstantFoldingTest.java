@@ -0,0 +1,121 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.VMCode;
+
+public class ConstantFoldingTest {
+
+    private static Parser compile(String expression, boolean fold) {
+        var input = "class Main { function int f(int y) { var int x; let x = " + expression + "; return x; } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        if (fold) {
+            parser.addPass(new ConstantFolding());
+        }
+        parser.parse();
+        return parser;
+    }
+
+    // the code between the function header and the let's pop
+    private static String body(String expression) {
+        var vm = compile(expression, true).VMOutput();
+        return vm.substring(vm.indexOf('\n') + 1, vm.indexOf("pop local 0"));
+    }
+
+    @Test
+    public void testFolding () {
+        assertEquals("push constant 17\n", body("2 * 8 + 1"));
+        assertEquals("push constant 0\nnot\n", body("1 - 2"));
+        assertEquals("push constant 32767\nnot\n", body("32767 + 1"));
+        assertEquals("push constant 0\nnot\n", body("1 < 2"));
+        assertEquals("push constant 0\n", body("3 = 4"));
+        assertEquals("push constant 3\n", body("-7 / -2"));
+        assertEquals("push constant 6\n", body("6 & 7 | 2"));
+        assertEquals("push constant 5\n", body("-(-5)"));
+        assertEquals("push constant 0\n", body("~true"));
+    }
+
+    @Test
+    public void testNotFolded () {
+        assertEquals("push constant 5\nneg\n", body("-5"));
+        assertEquals("push constant 0\nnot\n", body("~0"));
+        assertEquals("push constant 5\npush constant 0\ncall Math.divide 2\n", body("5 / 0"));
+        assertEquals("push argument 0\npush constant 1\nadd\npush constant 2\nadd\n", body("y + 1 + 2"));
+        assertEquals("push constant 3\npush argument 0\ncall Math.multiply 2\n", body("(1 + 2) * y"));
+    }
+
+    @Test
+    public void testSameValues () {
+        var random = new Random(19);
+        for (int i = 0; i < 2000; i++) {
+            var expression = expression(random, 3);
+            Integer expected = evaluate(compile(expression, false).VMCode());
+            Integer actual = evaluate(compile(expression, true).VMCode());
+            assertEquals(expression, expected, actual);
+        }
+    }
+
+    private static String expression(Random random, int depth) {
+        var sb = new StringBuilder(term(random, depth));
+        for (int n = random.nextInt(3); n > 0; n--) {
+            sb.append(' ').append("+-*/&|<>=".charAt(random.nextInt(9))).append(' ').append(term(random, depth));
+        }
+        return sb.toString();
+    }
+
+    private static String term(Random random, int depth) {
+        int choice = depth == 0 ? 0 : random.nextInt(4);
+        return switch (choice) {
+            case 0 -> String.valueOf(random.nextBoolean() ? random.nextInt(10) : random.nextInt(32768));
+            case 1 -> "-" + term(random, depth - 1);
+            case 2 -> "~" + term(random, depth - 1);
+            default -> "(" + expression(random, depth - 1) + ")";
+        };
+    }
+
+    // runs the code up to the first pop, with the 16-bit arithmetic of the Hack VM; null on division by zero
+    private static Integer evaluate(VMCode code) {
+        var stack = new ArrayDeque<Integer>();
+        for (int i = 1; i < code.size(); i++) {
+            switch (code.op(i)) {
+                case PUSH -> stack.push(code.operand(i));
+                case POP -> {
+                    return stack.pop();
+                }
+                case NEG -> stack.push((int) (short) -stack.pop());
+                case NOT -> stack.push((int) (short) ~stack.pop());
+                case CALL -> {
+                    int b = stack.pop(), a = stack.pop();
+                    if (code.name(i).equals("Math.multiply")) {
+                        stack.push((int) (short) (a * b));
+                    } else if (b == 0) {
+                        return null;
+                    } else {
+                        stack.push((int) (short) (a / b));
+                    }
+                }
+                default -> {
+                    int b = stack.pop(), a = stack.pop();
+                    stack.push((int) (short) switch (code.op(i)) {
+                        case ADD -> a + b;
+                        case SUB -> a - b;
+                        case AND -> a & b;
+                        case OR -> a | b;
+                        case EQ -> a == b ? -1 : 0;
+                        case GT -> a > b ? -1 : 0;
+                        default -> a < b ? -1 : 0;
+                    });
+                }
+            }
+        }
+        throw new IllegalStateException("no pop");
+    }
+}
@@ -0,0 +1,70 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+
+public class DeadCodeEliminationTest extends OptTestSupport {
+
+    private static String compile(String body, DeadCodeElimination dce) {
+        var input = "class Main { function int f(int y) { var int x; " + body + " } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        if (dce != null) {
+            parser.addPass(dce);
+        }
+        parser.parse();
+        var vm = parser.VMOutput();
+        return vm.substring(vm.indexOf('\n') + 1);
+    }
+
+    @Test
+    public void testAfterReturn () {
+        var dce = new DeadCodeElimination();
+        assertEquals("push argument 0\nreturn\n", compile("return y; let x = 1; return x;", dce));
+        assertEquals(4, dce.removed());
+    }
+
+    @Test
+    public void testConstantConditions () {
+        assertEquals("push constant 0\nreturn\n", compile("if (false) { let x = 1; } return 0;", new DeadCodeElimination()));
+        assertEquals("push constant 1\nreturn\n",
+            compile("if (true) { return 1; } else { return 2; } return 3;", new DeadCodeElimination()));
+        assertEquals("push constant 1\npop local 0\npush local 0\nreturn\n",
+            compile("if (true) { let x = 1; } else { let x = 2; } return x;", new DeadCodeElimination()));
+        assertEquals("push argument 0\nreturn\n", compile("while (false) { let x = 1; } return y;", new DeadCodeElimination()));
+
+        // the loop stays, what follows it cannot run
+        assertEquals("label WHILE_EXP0\npush argument 0\nif-goto IF_TRUE0\ngoto IF_FALSE0\nlabel IF_TRUE0\npush argument 0\nreturn\n"
+            + "label IF_FALSE0\ngoto WHILE_EXP0\n",
+            compile("while (true) { if (y) { return y; } } return 0;", new DeadCodeElimination()));
+    }
+
+    @Test
+    public void testReachableCodeStays () {
+        var body = "if (y) { let x = 1; } else { let x = 2; } while (x < 3) { let x = x + 1; } return x;";
+        var dce = new DeadCodeElimination();
+        assertEquals(compile(body, null), compile(body, dce));
+        assertEquals(0, dce.removed());
+    }
+
+    @Test
+    public void testSameBehaviour () throws IOException {
+        var plain = compile(PROGRAM, List.of());
+        var eliminated = compile(PROGRAM, List.of(DeadCodeElimination::new));
+        assertEquals(run(plain).output(), run(eliminated).output());
+        assertTrue(size(eliminated) < size(plain));
+
+        // after the peephole rewrites too
+        var both = compile(PROGRAM, List.of(Peephole::new, DeadCodeElimination::new));
+        assertEquals(run(plain).output(), run(both).output());
+        assertTrue(size(both) < size(compile(PROGRAM, List.of(Peephole::new))));
+    }
+}
@@ -0,0 +1,48 @@
+package br.ufma.ecp.opt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.TestSupport;
+import br.ufma.ecp.VMCode;
+
+public class OptTestSupport extends TestSupport {
+
+    // src/test/resources/Optimize, the program every pass is checked against
+    public static final String[] PROGRAM = { "Optimize/Main.jack", "Optimize/Counter.jack" };
+
+    public static List<VMCode> compile(String[] paths, List<Supplier<Pass>> passes) throws IOException {
+        List<VMCode> classes = new ArrayList<>();
+        for (String path : paths) {
+            var parser = new Parser(fromFile(path).getBytes(StandardCharsets.UTF_8));
+            parser.setOutputMode(Parser.OutputMode.VM);
+            for (var pass : passes) {
+                parser.addPass(pass.get());
+            }
+            parser.parse();
+            classes.add(parser.VMCode());
+        }
+        return classes;
+    }
+
+    public static VMInterpreter run(List<VMCode> classes) {
+        var vm = new VMInterpreter();
+        for (VMCode code : classes) {
+            vm.load(code);
+        }
+        vm.run("Main.main", 1_000_000);
+        return vm;
+    }
+
+    public static int size(List<VMCode> classes) {
+        int size = 0;
+        for (VMCode code : classes) {
+            size += code.size();
+        }
+        return size;
+    }
+}
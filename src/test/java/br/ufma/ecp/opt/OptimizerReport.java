@@ -0,0 +1,97 @@
+package br.ufma.ecp.opt;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.StringPool;
+
+/**
+ * Code size and pattern hits of the optimization passes on apps/, and
+ * executed instructions on the test program. A main() like the benchmarks:
+ *
+ *   java -cp target/classes:target/test-classes br.ufma.ecp.opt.OptimizerReport
+ */
+public class OptimizerReport extends OptTestSupport {
+
+    public static void main(String[] args) throws IOException {
+        for (String app : apps()) {
+            var peephole = new Peephole();
+            int before = instructions(app);
+            int after = instructions(app, peephole);
+            System.out.printf("apps/%-14s %6d -> %6d instructions%n", app, before, after);
+            for (Peephole.Pattern pattern : Peephole.Pattern.values()) {
+                System.out.printf("    %-16s %5d%n", pattern, peephole.hits(pattern));
+            }
+
+            var reduction = new StrengthReduction();
+            int reduced = instructions(app, reduction);
+            System.out.printf("    %-16s %5d  (%d instructions)%n", "STRENGTH", reduction.reduced(), reduced);
+
+            var dce = new DeadCodeElimination();
+            int eliminated = instructions(app, dce);
+            var afterPeephole = new DeadCodeElimination();
+            int both = instructions(app, new Peephole(), afterPeephole);
+            System.out.printf("    %-16s %5d  (%d instructions; %d removed, %d instructions after peephole)%n",
+                "DEAD_CODE", dce.removed(), eliminated, afterPeephole.removed(), both);
+
+            var pool = new StringPool();
+            for (File f : new File("apps/" + app).listFiles()) {
+                if (!f.getName().endsWith(".jack")) continue;
+                var parser = new Parser(Files.readAllBytes(f.toPath()));
+                parser.setOutputMode(Parser.OutputMode.VM);
+                parser.setStringPool(pool);
+                parser.parse();
+            }
+            System.out.printf("    strings: %d literals, %d uses, %d -> %d instructions, %d fewer executed per evaluation%n",
+                pool.pooled(), pool.uses(), pool.inlineSize(), pool.pooledSize(), pool.savedPerEvaluation());
+        }
+
+        var plain = run(compile(PROGRAM, List.of()));
+        var optimized = run(compile(PROGRAM, List.of(Peephole::new)));
+        System.out.printf("Optimize/ executed %d -> %d instructions%n", plain.executed(), optimized.executed());
+        System.out.printf("Optimize/ %d -> %d instructions with dead code elimination%n",
+            size(compile(PROGRAM, List.of())), size(compile(PROGRAM, List.of(DeadCodeElimination::new))));
+        var reduced = run(compile(PROGRAM, List.of(StrengthReduction::new)));
+        System.out.printf("Optimize/ Math.multiply calls %d -> %d with strength reduction%n",
+            plain.calls("Math.multiply"), reduced.calls("Math.multiply"));
+
+        var vm = new VMInterpreter();
+        for (String path : PROGRAM) {
+            var parser = new Parser(fromFile(path).getBytes(StandardCharsets.UTF_8));
+            parser.setOutputMode(Parser.OutputMode.VM);
+            parser.setStringPool(new StringPool());
+            parser.parse();
+            vm.load(parser.VMCode());
+        }
+        vm.run("Main.main", 1_000_000);
+        System.out.printf("Optimize/ executed %d -> %d instructions with a string pool, String.new calls %d -> %d%n",
+            plain.executed(), vm.executed(), plain.calls("String.new"), vm.calls("String.new"));
+    }
+
+    private static String[] apps() {
+        String[] apps = new File("apps").list();
+        Arrays.sort(apps);
+        return apps;
+    }
+
+    // of all the classes of the app, run through the passes in order
+    private static int instructions(String app, Pass... passes) throws IOException {
+        int size = 0;
+        for (File f : new File("apps/" + app).listFiles()) {
+            if (!f.getName().endsWith(".jack")) continue;
+            var parser = new Parser(Files.readAllBytes(f.toPath()));
+            parser.setOutputMode(Parser.OutputMode.VM);
+            for (Pass pass : passes) {
+                parser.addPass(pass);
+            }
+            parser.parse();
+            size += parser.VMCode().size();
+        }
+        return size;
+    }
+}
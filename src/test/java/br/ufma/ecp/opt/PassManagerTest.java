@@ -0,0 +1,88 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.VMCode;
+
+public class PassManagerTest extends OptTestSupport {
+
+    @Test
+    public void testLevelZeroKeepsTheOutput () throws IOException {
+        assertTrue(PassManager.level(0).passes().isEmpty());
+        for (File dir : new File("apps").listFiles()) {
+            for (File f : dir.listFiles()) {
+                if (!f.getName().endsWith(".jack")) continue;
+                var parser = new Parser(Files.readAllBytes(f.toPath()));
+                parser.setOutputMode(Parser.OutputMode.VM);
+                parser.addPass(PassManager.level(0));
+                parser.parse();
+                var expected = Files.readString(new File(dir, f.getName().replace(".jack", ".vm")).toPath());
+                assertEquals(f.getPath(), expected.replace("\r\n", "\n"), parser.VMOutput());
+            }
+        }
+    }
+
+    @Test
+    public void testLevels () throws IOException {
+        var plain = compile(PROGRAM, List.of());
+        var expected = run(plain);
+        for (int level = 1; level <= 2; level++) {
+            List<PassManager> managers = new ArrayList<>();
+            int preset = level;
+            var optimized = compile(PROGRAM, List.of(() -> {
+                var manager = PassManager.level(preset);
+                managers.add(manager);
+                return manager;
+            }));
+            var actual = run(optimized);
+            assertEquals(expected.output(), actual.output());
+            assertTrue(actual.executed() < expected.executed());
+
+            long delta = 0;
+            for (var manager : managers) {
+                for (Pass pass : manager.passes()) {
+                    delta += manager.delta(pass);
+                }
+            }
+            assertEquals(size(optimized) - size(plain), delta);
+        }
+        assertTrue(size(compile(PROGRAM, List.of(() -> PassManager.level(1))))
+            < size(compile(PROGRAM, List.of(() -> PassManager.level(2)))));
+    }
+
+    @Test
+    public void testToggle () throws IOException {
+        var manager = PassManager.level(1);
+        assertTrue(manager.setEnabled("peephole", false));
+        assertFalse(manager.setEnabled("strength-reduction", false));
+
+        var withoutPeephole = compile(PROGRAM, List.of(() -> manager));
+        var expected = compile(PROGRAM, List.of(ConstantFolding::new, DeadCodeElimination::new));
+        assertEquals(text(expected), text(withoutPeephole));
+
+        Pass peephole = manager.passes().get(1);
+        assertEquals(0, manager.delta(peephole));
+        assertEquals(0, manager.nanos(peephole));
+        assertTrue(manager.report().contains("(off)"));
+        assertTrue(manager.report().startsWith("7 functions"));
+    }
+
+    private static String text(List<VMCode> classes) {
+        var text = new StringBuilder();
+        for (var code : classes) {
+            text.append(code.text());
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+
+public class PeepholeTest extends OptTestSupport {
+
+    private static String compile(String body, Peephole peephole) {
+        var input = "class Main { function int f(int y) { var int x; var Array a; " + body + " } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        parser.addPass(peephole);
+        parser.parse();
+        var vm = parser.VMOutput();
+        return vm.substring(vm.indexOf('\n') + 1);
+    }
+
+    @Test
+    public void testIfBranch () {
+        var peephole = new Peephole();
+        assertEquals("push argument 0\nnot\nif-goto IF_FALSE0\npush constant 1\nreturn\nlabel IF_FALSE0\npush constant 0\nreturn\n",
+            compile("if (y) { return 1; } return 0;", peephole));
+        assertEquals(1, peephole.hits(Peephole.Pattern.IF_BRANCH));
+        assertEquals(1, peephole.hits(Peephole.Pattern.UNUSED_LABEL));
+
+        // a negated condition loses both nots
+        assertEquals("push argument 0\nif-goto IF_FALSE0\npush constant 1\nreturn\nlabel IF_FALSE0\npush constant 0\nreturn\n",
+            compile("if (~y) { return 1; } return 0;", new Peephole()));
+    }
+
+    @Test
+    public void testArrayStore () {
+        var peephole = new Peephole();
+        assertEquals("push constant 2\npush local 1\nadd\npop pointer 1\npush argument 0\npush constant 1\nadd\npop that 0\n"
+            + "push constant 0\nreturn\n", compile("let a[2] = y + 1; return 0;", peephole));
+        assertEquals(1, peephole.hits(Peephole.Pattern.ARRAY_STORE));
+
+        // reading an array element or calling may move pointer 1, so the temp stays
+        assertTrue(compile("let a[2] = a[3]; return 0;", new Peephole()).contains("pop temp 0"));
+        assertTrue(compile("let a[2] = Main.f(1); return 0;", new Peephole()).contains("pop temp 0"));
+    }
+
+    @Test
+    public void testConstantBranches () {
+        var peephole = new Peephole();
+        assertEquals("label WHILE_EXP0\npush argument 0\nreturn\ngoto WHILE_EXP0\npush constant 0\nreturn\n",
+            compile("while (true) { return y; } return 0;", peephole));
+        assertEquals(1, peephole.hits(Peephole.Pattern.NOT_NOT));
+        assertEquals(1, peephole.hits(Peephole.Pattern.CONSTANT_BRANCH));
+
+        // the dead assignment stays; removing it is left to dead code elimination
+        assertEquals("goto IF_FALSE0\npush constant 1\npop local 0\nlabel IF_FALSE0\npush constant 0\nreturn\n",
+            compile("if (false) { let x = 1; } return 0;", new Peephole()));
+
+        // any run of neg and not after the constant, as dead code elimination sees it
+        assertEquals("goto IF_FALSE0\npush constant 1\npop local 0\nlabel IF_FALSE0\npush constant 0\nreturn\n",
+            compile("if (~(-1)) { let x = 1; } return 0;",
+                new Peephole(EnumSet.of(Peephole.Pattern.CONSTANT_BRANCH, Peephole.Pattern.UNUSED_LABEL))));
+    }
+
+    @Test
+    public void testConfigurable () {
+        var none = new Peephole(EnumSet.noneOf(Peephole.Pattern.class));
+        var input = "if (y) { let a[1] = 2; } return 0;";
+        var parser = new Parser(("class Main { function int f(int y) { var int x; var Array a; " + input + " } }").getBytes());
+        parser.parse();
+        var plain = parser.VMOutput();
+        assertEquals(plain.substring(plain.indexOf('\n') + 1), compile(input, none));
+    }
+
+    @Test
+    public void testSameBehaviour () throws IOException {
+        var plain = compile(PROGRAM, List.of());
+        var optimized = compile(PROGRAM, List.of(Peephole::new));
+
+        var expected = run(plain);
+        var actual = run(optimized);
+        assertEquals(expected.output(), actual.output());
+        assertTrue(size(optimized) < size(plain));
+        assertTrue(actual.executed() < expected.executed());
+    }
+}
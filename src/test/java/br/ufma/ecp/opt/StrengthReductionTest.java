@@ -0,0 +1,98 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+
+public class StrengthReductionTest extends OptTestSupport {
+
+    // the code computing the expression assigned to x
+    private static String body(String expression) {
+        var input = "class Main { function int f(int y) { var int x; let x = " + expression + "; return x; } }";
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        parser.addPass(new StrengthReduction());
+        parser.parse();
+        var vm = parser.VMOutput();
+        return vm.substring(vm.indexOf('\n') + 1, vm.indexOf("pop local 0"));
+    }
+
+    @Test
+    public void testMultiply () {
+        assertEquals("push argument 0\npush argument 0\nadd\n", body("y * 2"));
+        assertEquals("push argument 0\npush argument 0\nadd\n", body("2 * y"));
+        assertEquals("push argument 0\npop temp 1\n"
+            + "push temp 1\npush temp 1\nadd\npop temp 1\n"
+            + "push temp 1\npush temp 1\nadd\npop temp 1\n"
+            + "push temp 1\n", body("y * 4"));
+        assertEquals("push argument 0\npop temp 1\n"
+            + "push temp 1\npush temp 1\nadd\npop temp 1\n"
+            + "push temp 1\n"
+            + "push temp 1\npush temp 1\nadd\npop temp 1\n"
+            + "push temp 1\npush temp 1\nadd\npop temp 1\n"
+            + "push temp 1\nadd\n", body("y * 10"));
+        assertEquals("push argument 0\nneg\n", body("y * -1"));
+        assertEquals("push argument 0\npush argument 0\nadd\nneg\n", body("y * -2"));
+        assertTrue(body("y * 15").contains("call Math.multiply 2"));
+        assertTrue(body("y * z").contains("call Math.multiply 2"));
+    }
+
+    @Test
+    public void testIdentities () {
+        assertEquals("push argument 0\n", body("y * 1"));
+        assertEquals("push argument 0\n", body("1 * y"));
+        assertEquals("push argument 0\n", body("y + 0"));
+        assertEquals("push argument 0\n", body("0 + y"));
+        assertEquals("push argument 0\n", body("y - 0"));
+        assertEquals("push argument 0\n", body("y & -1"));
+        assertEquals("push argument 0\n", body("y | 0"));
+        assertEquals("push argument 0\n", body("y / 1"));
+        assertEquals("push constant 0\n", body("y * 0"));
+        assertEquals("push constant 0\npush argument 0\nsub\n", body("0 - y"));
+
+        // the call still happens
+        assertEquals("call Main.g 0\npop temp 1\npush constant 0\n", body("Main.g() * 0"));
+        // signed division by other constants is left to Math.divide
+        assertTrue(body("y / 4").contains("call Math.divide 2"));
+    }
+
+    @Test
+    public void testSameBehaviour () throws IOException {
+        var plain = compile(PROGRAM, List.of());
+        var reduced = compile(PROGRAM, List.of(StrengthReduction::new));
+
+        var expected = run(plain);
+        var actual = run(reduced);
+        assertEquals(expected.output(), actual.output());
+        assertTrue(actual.calls("Math.multiply") < expected.calls("Math.multiply"));
+        assertEquals(expected.calls("Math.divide"), actual.calls("Math.divide"));
+    }
+
+    @Test
+    public void testWraparound () {
+        var random = new Random(21);
+        for (int i = 0; i < 300; i++) {
+            int y = random.nextInt(65536) - 32768;
+            int c = random.nextInt(2) == 0 ? 1 << random.nextInt(15) : random.nextInt(1000);
+            var input = "class Main { function void main() { do Output.printInt(Main.f(" + (y < 0 ? "-" : "") + Math.abs(Math.max(y, -32767))
+                + ")); return; } function int f(int y) { return y * " + c + "; } }";
+            var outputs = new String[2];
+            for (int reduce = 0; reduce < 2; reduce++) {
+                var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+                parser.setOutputMode(Parser.OutputMode.VM);
+                if (reduce == 1) parser.addPass(new StrengthReduction());
+                parser.parse();
+                outputs[reduce] = run(List.of(parser.VMCode())).output();
+            }
+            assertEquals(input, outputs[0], outputs[1]);
+        }
+    }
+}
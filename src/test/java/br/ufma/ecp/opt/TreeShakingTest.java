@@ -0,0 +1,104 @@
+package br.ufma.ecp.opt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import br.ufma.ecp.Parser;
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+public class TreeShakingTest extends OptTestSupport {
+
+    private static VMCode compile(String input) {
+        var parser = new Parser(input.getBytes(StandardCharsets.UTF_8));
+        parser.setOutputMode(Parser.OutputMode.VM);
+        parser.parse();
+        return parser.VMCode();
+    }
+
+    @Test
+    public void testProgram () throws IOException {
+        var classes = compile(PROGRAM, List.of());
+        var shaking = new TreeShaking();
+        for (VMCode code : classes) {
+            shaking.add(code);
+        }
+        assertEquals(List.of("Main.unused", "Counter.reset"), shaking.removed());
+        assertTrue(shaking.reachable().contains("Counter.step"));
+        assertEquals(10, shaking.removedSize());
+
+        // running only what is kept gives the same output
+        List<VMCode> shaken = new ArrayList<>();
+        for (VMCode code : classes) {
+            var text = shaking.text(code);
+            assertFalse(text.contains("function Main.unused"));
+            shaken.add(reparse(text));
+        }
+        assertEquals(run(classes).output(), run(shaken).output());
+    }
+
+    @Test
+    public void testConservative () {
+        // no Main.main: everything stays
+        var library = compile("class Util { function int f() { return 1; } function int g() { return 2; } }");
+        var shaking = new TreeShaking();
+        shaking.add(library);
+        assertTrue(shaking.removed().isEmpty());
+        assertEquals(library.text(), shaking.text(library));
+
+        // a call the compiled classes do not declare keeps the whole class
+        var main = compile("class Main { function void main() { do Util.h(); do Output.printInt(1); return; } }");
+        shaking = new TreeShaking();
+        shaking.add(main);
+        shaking.add(library);
+        assertTrue(shaking.removed().isEmpty());
+
+        // methods through a typed variable are edges to the declared type
+        main = compile("""
+            class Main {
+                function void main() {
+                    var Util u;
+                    let u = Util.f();
+                    do u.m();
+                    return;
+                }
+            }
+            """);
+        var util = compile("class Util { function Util f() { return 0; } method void m() { return; } method void n() { return; } }");
+        shaking = new TreeShaking();
+        shaking.add(main);
+        shaking.add(util);
+        assertEquals(List.of("Util.n"), shaking.removed());
+    }
+
+    // the typed code of a VM text, enough for the interpreter
+    private static VMCode reparse(String text) {
+        var code = new VMCode();
+        for (String line : text.split("\n")) {
+            String[] parts = line.split(" ");
+            var op = VMCode.Op.valueOf(parts[0].toUpperCase().replace('-', '_'));
+            switch (op) {
+                case PUSH, POP -> code.add(op, segment(parts[1]), Integer.parseInt(parts[2]));
+                case LABEL, GOTO, IF_GOTO -> code.add(op, parts[1], 0);
+                case CALL, FUNCTION -> code.add(op, parts[1], Integer.parseInt(parts[2]));
+                default -> code.add(op);
+            }
+        }
+        return code;
+    }
+
+    private static VMWriter.Segment segment(String name) {
+        for (var segment : VMWriter.Segment.values()) {
+            if (segment.value.equals(name)) return segment;
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
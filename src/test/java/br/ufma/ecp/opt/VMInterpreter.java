@@ -0,0 +1,221 @@
+package br.ufma.ecp.opt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.ufma.ecp.VMCode;
+import br.ufma.ecp.VMWriter;
+
+/**
+ * Just enough of the Hack VM to run compiled test programs: the memory
+ * layout and calling convention of the standard VM, with Math.multiply,
+ * Math.divide, Memory.alloc, Array.new, String.new, String.appendChar,
+ * Output.printInt and Output.printString built in. Other
+ * OS calls return 0. Counts executed instructions, labels excluded, and
+ * calls to the built in functions.
+ */
+public class VMInterpreter {
+    private static final int SP = 0, LCL = 1, ARG = 2, THIS = 3, THAT = 4;
+
+    private final List<VMCode.Op> ops = new ArrayList<>();
+    private final List<VMWriter.Segment> segments = new ArrayList<>();
+    private final List<Integer> operands = new ArrayList<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<String> functionOf = new ArrayList<>();
+    private final Map<String, Integer> functions = new HashMap<>();
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<String, Integer> staticBase = new HashMap<>();
+    private final Map<String, Integer> builtinCalls = new HashMap<>();
+
+    private final int[] ram = new int[32768];
+    private int heap = 2048;
+    private final StringBuilder output = new StringBuilder();
+    private long executed;
+
+    public void load(VMCode code) {
+        String function = null;
+        for (int i = 0; i < code.size(); i++) {
+            VMCode.Op op = code.op(i);
+            String name = op.hasName() ? code.name(i) : null;
+            if (op == VMCode.Op.FUNCTION) {
+                function = name;
+                functions.put(name, ops.size());
+            }
+            if (op == VMCode.Op.LABEL) {
+                labels.put(function + "$" + name, ops.size());
+            }
+            ops.add(op);
+            segments.add(op == VMCode.Op.PUSH || op == VMCode.Op.POP ? code.segment(i) : null);
+            operands.add(op == VMCode.Op.CALL || op == VMCode.Op.FUNCTION ? code.count(i) : code.operand(i));
+            names.add(name);
+            functionOf.add(function);
+        }
+    }
+
+    // what Output.printInt and Output.printString printed, one per line
+    public String output() {
+        return output.toString();
+    }
+
+    public long executed() {
+        return executed;
+    }
+
+    // times a built in function like Math.multiply was called
+    public int calls(String function) {
+        return builtinCalls.getOrDefault(function, 0);
+    }
+
+    public String run(String function, long maxSteps) {
+        ram[SP] = 256;
+        ram[LCL] = 256;
+        ram[ARG] = 256;
+        int pc = call(function, 0, -1);
+        while (pc >= 0) {
+            if (executed++ > maxSteps) throw new IllegalStateException("too many steps");
+            pc = step(pc);
+        }
+        return output();
+    }
+
+    private int step(int pc) {
+        VMCode.Op op = ops.get(pc);
+        int operand = operands.get(pc);
+        switch (op) {
+            case PUSH -> push(read(segments.get(pc), operand, pc));
+            case POP -> {
+                int value = pop();
+                write(segments.get(pc), operand, pc, value);
+            }
+            case NEG -> push(-pop());
+            case NOT -> push(~pop());
+            case ADD, SUB, AND, OR, EQ, GT, LT -> {
+                int b = pop(), a = pop();
+                push(switch (op) {
+                    case ADD -> a + b;
+                    case SUB -> a - b;
+                    case AND -> a & b;
+                    case OR -> a | b;
+                    case EQ -> a == b ? -1 : 0;
+                    case GT -> a > b ? -1 : 0;
+                    default -> a < b ? -1 : 0;
+                });
+            }
+            case LABEL -> executed--;
+            case GOTO -> {
+                return label(pc);
+            }
+            case IF_GOTO -> {
+                if (pop() != 0) return label(pc);
+            }
+            case FUNCTION -> {
+                for (int i = 0; i < operand; i++) push(0);
+            }
+            case CALL -> {
+                return call(names.get(pc), operand, pc + 1);
+            }
+            case RETURN -> {
+                int frame = ram[LCL];
+                int returnTo = ram[frame - 5];
+                ram[ram[ARG]] = ram[ram[SP] - 1];
+                ram[SP] = ram[ARG] + 1;
+                ram[THAT] = ram[frame - 1];
+                ram[THIS] = ram[frame - 2];
+                ram[ARG] = ram[frame - 3];
+                ram[LCL] = ram[frame - 4];
+                return returnTo;
+            }
+        }
+        return pc + 1;
+    }
+
+    private int call(String function, int nArgs, int returnTo) {
+        Integer target = functions.get(function);
+        if (target == null) {
+            int[] args = new int[nArgs];
+            for (int i = nArgs - 1; i >= 0; i--) args[i] = pop();
+            push(builtin(function, args));
+            return returnTo;
+        }
+        push(returnTo);
+        push(ram[LCL]);
+        push(ram[ARG]);
+        push(ram[THIS]);
+        push(ram[THAT]);
+        ram[ARG] = ram[SP] - nArgs - 5;
+        ram[LCL] = ram[SP];
+        return target;
+    }
+
+    private int builtin(String function, int[] args) {
+        builtinCalls.merge(function, 1, Integer::sum);
+        switch (function) {
+            case "Math.multiply": return args[0] * args[1];
+            case "Math.divide": return args[0] / args[1];
+            case "Memory.alloc":
+            case "Array.new":
+                int block = heap;
+                heap += Math.max(1, args[0]);
+                return block;
+            case "String.new":
+                // length, then the characters
+                int string = heap;
+                heap += 1 + Math.max(1, args[0]);
+                return string;
+            case "String.appendChar":
+                ram[args[0] + 1 + ram[args[0]]++] = args[1];
+                return args[0];
+            case "Output.printInt":
+                output.append((short) args[0]).append('\n');
+                return 0;
+            case "Output.printString":
+                for (int i = 0; i < ram[args[0]]; i++) {
+                    output.append((char) ram[args[0] + 1 + i]);
+                }
+                output.append('\n');
+                return 0;
+            default: return 0;
+        }
+    }
+
+    private int label(int pc) {
+        Integer target = labels.get(functionOf.get(pc) + "$" + names.get(pc));
+        if (target == null) throw new IllegalStateException("no label " + names.get(pc) + " in " + functionOf.get(pc));
+        return target;
+    }
+
+    private int read(VMWriter.Segment segment, int index, int pc) {
+        return segment == VMWriter.Segment.CONST ? index : ram[address(segment, index, pc)];
+    }
+
+    private void write(VMWriter.Segment segment, int index, int pc, int value) {
+        ram[address(segment, index, pc)] = value;
+    }
+
+    private int address(VMWriter.Segment segment, int index, int pc) {
+        return switch (segment) {
+            case LOCAL -> ram[LCL] + index;
+            case ARG -> ram[ARG] + index;
+            case THIS -> ram[THIS] + index;
+            case THAT -> ram[THAT] + index;
+            case POINTER -> THIS + index;
+            case TEMP -> 5 + index;
+            case STATIC -> {
+                String function = functionOf.get(pc);
+                String className = function.substring(0, function.indexOf('.'));
+                yield 16 + staticBase.computeIfAbsent(className, c -> 16 * staticBase.size()) + index;
+            }
+            default -> throw new IllegalStateException("no address for " + segment);
+        };
+    }
+
+    private void push(int value) {
+        ram[ram[SP]++] = (short) value;
+    }
+
+    private int pop() {
+        return ram[--ram[SP]];
+    }
+}